@@ -17,28 +17,59 @@
 package com.masterofcode.android.coverflow_library;
 
 import android.app.Activity;
+import android.app.ActivityManager;
 import android.content.Context;
+import android.content.pm.ConfigurationInfo;
 import android.graphics.PixelFormat;
 import android.graphics.RectF;
+import android.opengl.ETC1Util;
 import android.opengl.GLSurfaceView;
-import android.opengl.GLU;
+import android.os.Build;
+import android.os.SystemClock;
 import android.util.AttributeSet;
 import android.view.MotionEvent;
 import android.view.VelocityTracker;
 import android.view.animation.AnimationUtils;
 import com.masterofcode.android.coverflow_library.listeners.CoverFlowListener;
 import com.masterofcode.android.coverflow_library.listeners.DataChangedListener;
+import com.masterofcode.android.coverflow_library.listeners.FrameMetricsListener;
+import com.masterofcode.android.coverflow_library.render_objects.AbstractImage;
 import com.masterofcode.android.coverflow_library.render_objects.Background;
 import com.masterofcode.android.coverflow_library.render_objects.CoverImage;
 import com.masterofcode.android.coverflow_library.render_objects.EmptyImage;
+import com.masterofcode.android.coverflow_library.render_objects.HudOverlay;
+import com.masterofcode.android.coverflow_library.render_objects.TextureAtlas;
+import com.masterofcode.android.coverflow_library.render_objects.TextureManager;
+import com.masterofcode.android.coverflow_library.render_objects.TextureUploadQueue;
+import com.masterofcode.android.coverflow_library.render_objects.TileBatch;
+import com.masterofcode.android.coverflow_library.renderer.GL10TileRenderer;
+import com.masterofcode.android.coverflow_library.renderer.GLStateCache;
+import com.masterofcode.android.coverflow_library.renderer.GLES20TileRenderer;
+import com.masterofcode.android.coverflow_library.renderer.SharedContextUploader;
+import com.masterofcode.android.coverflow_library.renderer.TexturePool;
+import com.masterofcode.android.coverflow_library.renderer.TileLayout;
+import com.masterofcode.android.coverflow_library.renderer.TileRenderer;
+import com.masterofcode.android.coverflow_library.renderer.UploaderContextFactory;
 import com.masterofcode.android.coverflow_library.utils.CoverflowQuery;
-import com.masterofcode.android.coverflow_library.utils.DataCache;
+import com.masterofcode.android.coverflow_library.utils.DecodeScheduler;
+import com.masterofcode.android.coverflow_library.utils.EAnimationMode;
+import com.masterofcode.android.coverflow_library.utils.EFormatPolicy;
+import com.masterofcode.android.coverflow_library.utils.Etc1Cache;
+import com.masterofcode.android.coverflow_library.utils.FrameMetrics;
+import com.masterofcode.android.coverflow_library.utils.FrameStats;
 import com.masterofcode.android.coverflow_library.utils.EQuality;
+import com.masterofcode.android.coverflow_library.utils.ERenderer;
+import com.masterofcode.android.coverflow_library.utils.ScrollState;
+import com.masterofcode.android.coverflow_library.utils.TextureFormats;
+import com.masterofcode.android.coverflow_library.utils.TextureQuality;
+import com.masterofcode.android.coverflow_library.utils.TraceCompat;
 
 import javax.microedition.khronos.egl.EGLConfig;
 import javax.microedition.khronos.opengles.GL10;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Custom Cover Flow Gallery View.
@@ -51,13 +82,52 @@ public class CoverFlowOpenGL extends GLSurfaceView implements GLSurfaceView.Rend
 	private static final int TOUCH_MINIMUM_MOVE = 5;
 	private static final float FRICTION = 10.0f;
     private static final float MAX_SPEED = 6.0f;
+    private static final long UPLOAD_BUDGET_MILLIS = 4; // time per frame for texture uploads
+    private static final int MIN_PREVIEW_SIZE = 64;
+    private static final int MIN_LOD_SIZE = 64;
+    private static final int TEXTURE_POOL_SIZE = 8;     // textures kept for reuse
+    private static final float SETTLED_DISTANCE = 0.01f;      // tiles from a whole offset
+    private static final float FULL_RESOLUTION_DISTANCE = 1;  // tiles from the center that get the full resolution
+    private static final float PREFETCH_SKIP_SPEED = 3;       // tiles per second above which a fling skips the tiles it passes
+    private static final int NO_FLING_TARGET = -1;
 
     private int maxTiles = 21; // the maximum tiles in the cache
     private int visibleTiles = 5; // the visble tiles left and right
 
     private int imageSize = 512; // the bitmap size we use for the texture
+    private boolean autoQuality;
+    private boolean progressiveLoading;
+    private boolean levelOfDetail;
+    private List<String> thumbnailsList;
+
+    private int prefetchRadius = 2; // the tiles left and right of the end of a fling loaded when it starts
+    private int prefetchBudget = 5; // the most loads a fling starts ahead
+    private volatile int mFlingTarget = NO_FLING_TARGET;  // the tile the running fling comes to rest on
+    private int mPrefetchedTarget = NO_FLING_TARGET;
+    private boolean mSkippingTiles;  // the fling passes the tiles of this frame too fast to load them
+
+    private int retentionWindow = 10;   // the tiles left and right of the center that keep their loads
+    private int mRetentionCenter = Integer.MIN_VALUE;
+    private int mRetentionTarget = NO_FLING_TARGET;
+
+    // the covers on the screen, around the center and around the end of a fling keep their loads
+    private final TextureManager.Retention mRetention = new TextureManager.Retention() {
+        @Override
+        public boolean retains(int position) {
+            if(position >= mVisibleRange[0] && position <= mVisibleRange[1]){
+                return true;
+            }
+            if(Math.abs(position - mRetentionCenter) <= retentionWindow){
+                return true;
+            }
+            return mPrefetchedTarget != NO_FLING_TARGET && Math.abs(position - mPrefetchedTarget) <= prefetchRadius;
+        }
+    };
 
-    private float mOffset;
+    // written by the input side, onDrawFrame reads a snapshot of it
+    private final ScrollState mScrollState = new ScrollState();
+    private final ScrollState.Snapshot mInputSnapshot = new ScrollState.Snapshot(); // UI thread only
+    private final ScrollState.Snapshot mFrameSnapshot = new ScrollState.Snapshot(); // GL thread only
     private int mLastOffset;
     private RectF mTouchRect;
     
@@ -76,9 +146,15 @@ public class CoverFlowOpenGL extends GLSurfaceView implements GLSurfaceView.Rend
     private float mDuration;
     private Runnable mAnimationRunnable;
     private VelocityTracker mVelocity;
+
+    private EAnimationMode animationMode = EAnimationMode.UI_THREAD;
+    private volatile boolean mRenderAnimating; // written last when a fling starts
+    private long mStartTimeNanos;
     
     private CoverFlowListener mListener;
-    private DataCache<Integer, CoverImage> mCache;
+    private TextureManager mTextureManager;
+    private final TexturePool mTexturePool = new TexturePool(TEXTURE_POOL_SIZE);
+    private long textureBudget; // bytes, 0 derives it from the memory class
 
     private CoverflowQuery aQuery;
 
@@ -92,6 +168,48 @@ public class CoverFlowOpenGL extends GLSurfaceView implements GLSurfaceView.Rend
     private Background mBackground;
 
     private boolean showBlackBars;
+    private EFormatPolicy formatPolicy = EFormatPolicy.AUTO;
+    private boolean aspectExactTextures;
+    private boolean mNpotSupported;
+
+    private boolean batchedRendering;
+    private boolean frontToBack;
+    private TextureAtlas mAtlas;
+    private TileBatch mBatch;
+    private int mMaxTextureSize;
+    private int mLoadedMaxTiles;
+
+    private TileRenderer mRenderer;
+
+    private UploaderContextFactory mContextFactory;
+
+    private boolean compressedTextures;
+    private boolean mEtc1Supported;
+    private Etc1Cache mEtc1Cache;
+
+    private boolean mContextLost;
+    private int mLoadedImageSize;
+
+    private final TileLayout mCullLayout = new TileLayout();
+    private final float[] mCullPlacement = new float[3];
+    private final int[] mVisibleRange = new int[2];
+
+    private FrameMetricsListener mFrameMetricsListener;
+    private final FrameMetrics mFrameMetrics = new FrameMetrics();
+    private final FrameStats mFrameStats = new FrameStats();
+    private final AtomicLong mPendingInputTime = new AtomicLong(); // uptime millis, 0 without input
+    private long mLastFrameStart;
+    private float mLastFrameOffset;
+    private boolean mFrameContinues;   // the last frame expected the next one right away
+    private int mTilesDrawn;
+    private boolean mSettled; // the scrolling stopped on a tile in this frame
+    private int mPlaceholderTiles;
+
+    private boolean hudEnabled;
+    private HudOverlay mHud;
+
+    private final TextureUploadQueue mUploadQueue = new TextureUploadQueue(0, UPLOAD_BUDGET_MILLIS);
+    private final DecodeScheduler mLoadScheduler = new DecodeScheduler();
 
     public CoverFlowOpenGL(Context context) {
         super(context);
@@ -105,15 +223,45 @@ public class CoverFlowOpenGL extends GLSurfaceView implements GLSurfaceView.Rend
         init();
     }
 
+    /**
+     * @param renderer the OpenGL ES version to render with, it can't be changed later
+     */
+    public CoverFlowOpenGL(Context context, ERenderer renderer){
+        super(context);
+
+        init(renderer);
+    }
+
     public void setActivity(Activity activity){
         this.mActivity = activity;
         aQuery = new CoverflowQuery(mActivity);
     }
 
     public void init(){
+        init(ERenderer.AUTO);
+    }
+
+    public void init(ERenderer renderer){
+        mRenderer = createRenderer(renderer);
+        mRenderer.setVisibleTiles(visibleTiles);
 
+        setEGLContextClientVersion(mRenderer.getGLVersion());
         setEGLConfigChooser(8, 8, 8, 8, 16, 0);
 
+        mContextFactory = new UploaderContextFactory(mRenderer.getGLVersion(), new Runnable() {
+            @Override
+            public void run() {
+                // a texture came in from the upload thread
+                requestRender();
+            }
+        });
+        setEGLContextFactory(mContextFactory);
+
+        if(Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB){
+            // the textures survive a pause where the device can keep the context
+            setPreserveEGLContextOnPause(true);
+        }
+
         setRenderer(this);
         setRenderMode(RENDERMODE_WHEN_DIRTY);
 
@@ -122,70 +270,236 @@ public class CoverFlowOpenGL extends GLSurfaceView implements GLSurfaceView.Rend
         setZOrderOnTop(true);
 
 //        int cacheForVisibleTiles = (visibleTiles * 2 + 1) + 10; // visible_left + center + visible_right + 10 additional
-        mCache = new DataCache<Integer, CoverImage>(maxTiles);//Math.min(maxTiles, cacheForVisibleTiles ));
+        mTextureManager = new TextureManager(maxTiles, getTextureBudget());
+        mTextureManager.setTexturePool(mTexturePool);
         mLastOffset = 0;
-        mOffset = 0;
+        setOffset(0, 0);
+    }
+
+    private TileRenderer createRenderer(ERenderer renderer){
+        if(renderer == ERenderer.AUTO){
+            renderer = supportsGLES20() ? ERenderer.GLES20 : ERenderer.GLES10;
+        }
+
+        if(renderer == ERenderer.GLES20){
+            return new GLES20TileRenderer();
+        }
+
+        return new GL10TileRenderer();
+    }
+
+    private boolean supportsGLES20(){
+        // vertex buffer offsets need API 9
+        if(Build.VERSION.SDK_INT < Build.VERSION_CODES.GINGERBREAD){
+            return false;
+        }
+
+        ActivityManager am = (ActivityManager) getContext().getSystemService(Context.ACTIVITY_SERVICE);
+        ConfigurationInfo info = am != null ? am.getDeviceConfigurationInfo() : null;
+
+        return info != null && info.reqGlEsVersion >= 0x20000;
     }
 
     @Override
     public void onSurfaceCreated(GL10 gl, EGLConfig config) {
-        gl.glEnable(GL10.GL_TEXTURE_2D);			//Enable Texture Mapping ( NEW )
-        gl.glShadeModel(GL10.GL_SMOOTH); 			//Enable Smooth Shading
-        gl.glClearColor(0.0f, 0.0f, 0.0f, 0.5f); 	//Black Background
-        gl.glDisable(GL10.GL_DEPTH_TEST); 			//Enables Depth Testing
+        // only called for a new context, the old one took its textures along
+        mContextLost = true;
+
+        mRenderer.onSurfaceCreated(gl);
+
+        int[] maxTextureSize = new int[1];
+        gl.glGetIntegerv(GL10.GL_MAX_TEXTURE_SIZE, maxTextureSize, 0);
+        mMaxTextureSize = maxTextureSize[0];
 
-        //Really Nice Perspective Calculations
-        gl.glHint(GL10.GL_PERSPECTIVE_CORRECTION_HINT, GL10.GL_NICEST);
+        // needs a current context
+        mEtc1Supported = ETC1Util.isETC1Supported();
+
+        // ES 2.0 takes any size as long as the texture is clamped and not mipmapped
+        String extensions = gl.glGetString(GL10.GL_EXTENSIONS);
+        mNpotSupported = mRenderer.getGLVersion() >= 2 || (extensions != null
+                && (extensions.contains("GL_OES_texture_npot") || extensions.contains("GL_ARB_texture_non_power_of_two")));
     }
 
     @Override
     public void onSurfaceChanged(GL10 gl, int w, int h) {
-        mCache.clear();
+        boolean contextLost = mContextLost;
+        mContextLost = false;
+
+        if(autoQuality){
+            chooseQuality(w, h);
+        }
+
+        // a new context or different textures, otherwise only the geometry follows the new size.
+        // The atlas has a cell for every cached tile
+        boolean reload = contextLost || batchedRendering != (mBatch != null) || imageSize != mLoadedImageSize
+                || (mBatch != null && maxTiles != mLoadedMaxTiles);
+        mLoadedImageSize = imageSize;
+        mLoadedMaxTiles = maxTiles;
 
         mWidth = w;
         mHeight = h;
 
+        if(contextLost){
+            forgetTextures();
+        }
+
+        if(reload){
+            initBatch(gl);
+        }
+        mRenderer.onSurfaceChanged(gl, w, h);
+
+        SharedContextUploader uploader = mContextFactory.getUploader();
+        if(uploader != null){
+            uploader.setTexturePool(mTexturePool);
+        }
+        Etc1Cache etc1Cache = compressedTextures && mEtc1Supported ? mEtc1Cache : null;
+
         if(mBackground != null){
             mBackground.setGL(gl);
+            mBackground.setStateCache(mRenderer.getStateCache());
+            mBackground.setUploader(uploader);
             mBackground.initBuffers(w, h);
-            mBackground.loadGLTexture();
+            if(reload){
+                mBackground.loadGLTexture();
+            }
         }
 
         if(emptyImage != null){
             emptyImage.setGL(gl);
-            emptyImage.setViewportData(mWidth, mHeight);
+            emptyImage.setStateCache(mRenderer.getStateCache());
+            emptyImage.setUploader(uploader);
             emptyImage.setImageSize(imageSize);
-            emptyImage.loadGLTexture();
+            emptyImage.setFormatPolicy(formatPolicy);
+            emptyImage.setNpotTextures(mNpotSupported);
+            if(reload){
+                emptyImage.setViewportData(mWidth, mHeight);
+                emptyImage.setAtlas(mAtlas);
+                emptyImage.loadGLTexture();
+            } else {
+                emptyImage.updateViewport(mWidth, mHeight);
+            }
+        }
+
+        if(reload){
+            mUploadQueue.clear();
+            mTextureManager.clear();
         }
 
         if(images != null && images.size() > 0){
             for(CoverImage cImg : images){
                 if(cImg != null){
                     cImg.setGL(gl);
-                    cImg.setViewportData(mWidth, mHeight);
-                    cImg.removeTexture();
+                    cImg.setStateCache(mRenderer.getStateCache());
+                    cImg.setUploader(uploader);
+                    cImg.setTexturePool(mTexturePool);
+                    cImg.setEtc1Cache(etc1Cache);
+                    cImg.setNpotTextures(mNpotSupported);
+                    if(reload){
+                        // reloaded when drawn, the upload queue takes them center out
+                        cImg.setImageSize(imageSize);
+                        cImg.setPreviewSize(getPreviewSize());
+                        cImg.setViewportData(mWidth, mHeight);
+                        cImg.setAtlas(mAtlas);
+                        cImg.removeTexture();
+                    } else {
+                        cImg.updateViewport(mWidth, mHeight);
+                    }
                 }
             }
         }
 
+        if(reload){
+            // the textures given back above may have the old size
+            mTexturePool.clear(gl);
+        }
+
+        if(mHud != null){
+            mHud.setGL(gl);
+            mHud.setStateCache(mRenderer.getStateCache());
+            mHud.initBuffers(w, h);
+        }
+
         float imagew = w * 0.45f / 2.0f;
         float imageh = h * 0.45f / 2.0f;
         mTouchRect = new RectF(w / 2 - imagew, h / 2 - imageh, w / 2 + imagew, h / 2 + imageh);
 
-        gl.glViewport(0, 0, w, h); 	//Reset The Current Viewport
-        gl.glMatrixMode(GL10.GL_PROJECTION); 	//Select The Projection Matrix
-        gl.glLoadIdentity(); 					//Reset The Projection Matrix
+//        updateCache();
+    }
 
-        GLU.gluOrtho2D(gl, 0, w, 0, h);
+    /**
+     * The texture size and the tile budget for {@link EQuality#AUTO}, on the GL thread.
+     */
+    private void chooseQuality(int w, int h){
+        ActivityManager am = (ActivityManager) getContext().getSystemService(Context.ACTIVITY_SERVICE);
+        int memoryClass = am != null ? am.getMemoryClass() : 16;
+        float density = getResources().getDisplayMetrics().density;
 
-        gl.glMatrixMode(GL10.GL_MODELVIEW);
-        gl.glLoadIdentity();
+        imageSize = TextureQuality.chooseImageSize(w, h, mMaxTextureSize, memoryClass, density, visibleTiles);
 
-//        updateCache();
+        int tiles = TextureQuality.chooseMaxTiles(imageSize, memoryClass, visibleTiles);
+        if(tiles != maxTiles){
+            maxTiles = tiles;
+            mTextureManager.setMaxTiles(tiles);
+        }
+    }
+
+    /**
+     * Drop all texture names of the lost context without deleting them, on the GL thread.
+     * Bitmaps waiting for their upload are kept.
+     */
+    private void forgetTextures(){
+        if(mAtlas != null){
+            mAtlas.abandon();
+            mAtlas = null;
+        }
+        mTextureManager.setAtlas(null);
+        mTexturePool.abandon();
+
+        if(mBackground != null){
+            mBackground.forgetTexture();
+        }
+        if(emptyImage != null){
+            emptyImage.forgetTexture();
+        }
+        if(mHud != null){
+            mHud.forgetTexture();
+        }
+
+        if(images != null){
+            for(CoverImage cImg : images){
+                if(cImg != null){
+                    cImg.forgetTexture();
+                }
+            }
+        }
+    }
+
+    private void initBatch(GL10 gl){
+        if(mAtlas != null){
+            mAtlas.destroy();
+            mAtlas = null;
+        }
+        mBatch = null;
+
+        if(batchedRendering){
+            // every cached tile and the empty image
+            int capacity = Math.max(maxTiles, visibleTiles * 2 + 1) + 1;
+
+            // the pages have to be a power of two without npot support
+            int cellSize = mNpotSupported ? imageSize : TextureFormats.nextPowerOfTwo(imageSize);
+            mAtlas = new TextureAtlas(gl, cellSize, mMaxTextureSize, capacity, showBlackBars);
+            mBatch = new TileBatch(visibleTiles * 2 + 1);
+        }
+
+        mTextureManager.setAtlas(mAtlas);
+        mRenderer.setBatch(mBatch);
     }
 	
 	@Override
 	public boolean onTouchEvent(MotionEvent event) {
+		// the latency is measured from the first event the next frame sees
+		mPendingInputTime.compareAndSet(0, event.getEventTime());
+
 		int action = event.getAction();
 		switch(action) {
 		case MotionEvent.ACTION_DOWN:
@@ -218,7 +532,7 @@ public class CoverFlowOpenGL extends GLSurfaceView implements GLSurfaceView.Rend
 		mTouchStartX = x;
 		mTouchStartY = event.getY();
 		mStartTime = System.currentTimeMillis();
-		mStartOffset = mOffset;
+		mStartOffset = getOffset();
 		
 		mTouchMoved = false;
 		
@@ -243,7 +557,13 @@ public class CoverFlowOpenGL extends GLSurfaceView implements GLSurfaceView.Rend
 			mTouchMoved = true;
 		}
 		
-		mOffset = checkValid(mStartOffset + mTouchStartPos - pos);
+		float offset = checkValid(mStartOffset + mTouchStartPos - pos);
+
+		// drag velocity from the last position we published
+		mScrollState.read(mInputSnapshot);
+		long now = System.nanoTime();
+		float dt = (now - mInputSnapshot.getTimeNanos()) / 1000000000.0f;
+		mScrollState.publish(offset, dt > 0 ? (offset - mInputSnapshot.getOffset()) / dt : 0, now);
 		
 		requestRender();
 		mVelocity.addMovement(event);
@@ -256,7 +576,7 @@ public class CoverFlowOpenGL extends GLSurfaceView implements GLSurfaceView.Rend
 		if (mTouchMoved) {
 			mStartOffset += mTouchStartPos - pos;
 			mStartOffset = checkValid(mStartOffset);
-			mOffset = mStartOffset;
+			setOffset(mStartOffset, 0);
 			
 			mVelocity.addMovement(event);
 			
@@ -271,13 +591,13 @@ public class CoverFlowOpenGL extends GLSurfaceView implements GLSurfaceView.Rend
 			startAnimation(-speed);
 		} else {
 			if (mTouchRect.contains(event.getX(), event.getY())) {
-				mListener.topTileClicked(this, (int) (mOffset + 0.01));
+				mListener.topTileClicked(this, (int) (getOffset() + 0.01));
 			}
 		}
 	}
 	
 	private void startAnimation(double speed) {
-		if (mAnimationRunnable != null)
+		if (mAnimationRunnable != null || mRenderAnimating)
 			return ;
 		
 		double delta = speed * speed / (FRICTION * 2);
@@ -295,6 +615,17 @@ public class CoverFlowOpenGL extends GLSurfaceView implements GLSurfaceView.Rend
 		mDuration = Math.abs(mStartSpeed / FRICTION);
 		mStartTime = AnimationUtils.currentAnimationTimeMillis();
 
+        // the GL thread loads the tiles around it with the next frame
+        mFlingTarget = (int) nearest;
+
+        if(animationMode == EAnimationMode.RENDER_THREAD){
+            mStartTimeNanos = System.nanoTime();
+            mRenderAnimating = true;
+            // every frame advances the fling, swapping buffers waits for vsync
+            setRenderMode(RENDERMODE_CONTINUOUSLY);
+            return;
+        }
+
 		mAnimationRunnable = new Runnable() {
 			@Override
 			public void run() {
@@ -315,9 +646,19 @@ public class CoverFlowOpenGL extends GLSurfaceView implements GLSurfaceView.Rend
 	}
 	
 	private void endAnimation() {
+        mFlingTarget = NO_FLING_TARGET;
+
+        if(mRenderAnimating){
+            // the GL thread drops its next step, this publish changes the version it read
+            mRenderAnimating = false;
+            setOffset(checkValid((float) Math.floor(getOffset() + 0.5)), 0);
+
+            setRenderMode(RENDERMODE_WHEN_DIRTY);
+            requestRender();
+        }
+
 		if (mAnimationRunnable != null) {
-			mOffset = (float) Math.floor(mOffset + 0.5);
-			mOffset = checkValid(mOffset);
+			setOffset(checkValid((float) Math.floor(getOffset() + 0.5)), 0);
 
 			requestRender();
 			
@@ -329,17 +670,63 @@ public class CoverFlowOpenGL extends GLSurfaceView implements GLSurfaceView.Rend
 	}
 	
 	private void updateAnimationAtElapsed(float elapsed) {
-		if (elapsed > mDuration)
-			elapsed = mDuration;
-		
-		float delta = Math.abs(mStartSpeed) * elapsed - FRICTION * elapsed * elapsed / 2;
-		if (mStartSpeed < 0)
-			delta = -delta;
-		
-		mOffset = checkValid(mStartOffset + delta);
+		setOffset(offsetAtElapsed(elapsed), velocityAtElapsed(elapsed));
 		requestRender();
 	}
 
+    private float getOffset() {
+        return mScrollState.getOffset();
+    }
+
+    private void setOffset(float offset, float velocity) {
+        mScrollState.publish(offset, velocity, System.nanoTime());
+    }
+
+    private float offsetAtElapsed(float elapsed) {
+        if (elapsed > mDuration)
+            elapsed = mDuration;
+
+        float delta = Math.abs(mStartSpeed) * elapsed - FRICTION * elapsed * elapsed / 2;
+        if (mStartSpeed < 0)
+            delta = -delta;
+
+        return checkValid(mStartOffset + delta);
+    }
+
+    private float velocityAtElapsed(float elapsed) {
+        if (elapsed > mDuration)
+            elapsed = mDuration;
+
+        float speed = Math.abs(mStartSpeed) - FRICTION * elapsed;
+        return mStartSpeed < 0 ? -speed : speed;
+    }
+
+    /**
+     * Advance the fling to the time of the frame, on the GL thread.
+     * A step is only published if the input side published nothing since the frame snapshot was read,
+     * so a touch always wins over a running fling.
+     */
+    private void updateRenderAnimation(ScrollState.Snapshot frame, long frameTimeNanos) {
+        if(!mRenderAnimating){
+            return;
+        }
+
+        float elapsed = (frameTimeNanos - mStartTimeNanos) / 1000000000.0f;
+
+        if(elapsed >= mDuration){
+            float nearest = checkValid((float) Math.floor(offsetAtElapsed(mDuration) + 0.5));
+            if(mScrollState.publish(frame.getVersion(), nearest, 0, frameTimeNanos)){
+                mRenderAnimating = false;
+                mFlingTarget = NO_FLING_TARGET;
+                setRenderMode(RENDERMODE_WHEN_DIRTY);
+            }
+        } else {
+            mScrollState.publish(frame.getVersion(), offsetAtElapsed(elapsed), velocityAtElapsed(elapsed), frameTimeNanos);
+        }
+
+        mScrollState.read(frame);
+    }
+
 //    private void updateCache(){
 //        int diff = VISIBLE_TILES * 2 + 5;
 //        int diffLeft = Math.max(0,(int)mOffset - diff);
@@ -362,38 +749,395 @@ public class CoverFlowOpenGL extends GLSurfaceView implements GLSurfaceView.Rend
         return maxTiles;
     }
 
-    public void setMaxTiles(int maxTiles) {
+    public void setMaxTiles(final int maxTiles) {
         this.maxTiles = maxTiles;
-        mCache = new DataCache<Integer, CoverImage>(maxTiles);
+        if(mTextureManager == null){
+            // taken by init()
+            return;
+        }
+
+        queueEvent(new Runnable() {
+            @Override
+            public void run() {
+                mTextureManager.setMaxTiles(maxTiles);
+            }
+        });
+    }
+
+    /**
+     * The most GPU memory the cover textures may take, the least recently drawn covers lose
+     * their texture beyond it. 0 takes a quarter of the memory class of the device.
+     */
+    public void setTextureBudget(long bytes){
+        textureBudget = bytes;
+        if(mTextureManager == null){
+            return;
+        }
+
+        final long budget = getTextureBudget();
+        queueEvent(new Runnable() {
+            @Override
+            public void run() {
+                mTextureManager.setBudget(budget);
+            }
+        });
+    }
+
+    private long getTextureBudget(){
+        if(textureBudget > 0){
+            return textureBudget;
+        }
+
+        ActivityManager am = (ActivityManager) getContext().getSystemService(Context.ACTIVITY_SERVICE);
+        return TextureQuality.chooseTextureBudget(am != null ? am.getMemoryClass() : 16);
+    }
+
+    /**
+     * Run the cache lookups, downloads and decodes of the covers of this gallery on the executor of
+     * the app. At most one load per core runs at a time, the covers nearest to the center first.
+     *
+     * @param executor the executor, null for the own pool of the library
+     */
+    public void setLoaderExecutor(Executor executor){
+        mLoadScheduler.setExecutor(executor);
+    }
+
+    /**
+     * The loads of this gallery waiting and running.
+     */
+    public DecodeScheduler getLoadScheduler(){
+        return mLoadScheduler;
+    }
+
+    /**
+     * The textures kept for reuse, with the number of reused ones.
+     */
+    public TexturePool getTexturePool(){
+        return mTexturePool;
+    }
+
+    /**
+     * The covers holding a texture, with the resident and evicted bytes.
+     */
+    public TextureManager getTextureManager(){
+        return mTextureManager;
     }
 
     public int getVisibleTiles() {
         return visibleTiles;
     }
 
-    public void setVisibleTiles(int visibleTiles) {
+    public void setVisibleTiles(final int visibleTiles) {
         this.visibleTiles = visibleTiles;
+        if(mRenderer == null){
+            // taken by init()
+            return;
+        }
+
+        // the renderer reads it while it builds a frame
+        queueEvent(new Runnable() {
+            @Override
+            public void run() {
+                mRenderer.setVisibleTiles(visibleTiles);
+            }
+        });
+        requestRender();
     }
 
+    /**
+     * Where the fling animation runs. With {@link EAnimationMode#RENDER_THREAD} the fling is
+     * evaluated on the GL thread for every frame, so it keeps the display refresh rate
+     * (60, 90 or 120 Hz) even when the main thread is busy.
+     */
+    public void setAnimationMode(EAnimationMode mode){
+        endAnimation();
+        animationMode = mode;
+    }
+
+    public EAnimationMode getAnimationMode(){
+        return animationMode;
+    }
+
+    /**
+     * Keep the covers ETC1 compressed in the cache directory and upload them compressed,
+     * for a quarter of the GPU memory of the RGB_565 texture. Only covers with black bars are opaque
+     * and get compressed, and only on GPUs with ETC1 support.
+     * Takes effect on the next surface change, so it should be set before the view is shown.
+     */
+    public void setCompressedTextures(boolean value){
+        compressedTextures = value;
+        if(value && mEtc1Cache == null){
+            mEtc1Cache = new Etc1Cache(getContext());
+        }
+    }
+
+    public boolean isCompressedTextures(){
+        return compressedTextures;
+    }
+
+    /**
+     * Upload the textures on a background thread with an EGL context of its own that shares
+     * the textures with the view, so drawing never waits for an upload.
+     * Falls back to uploading on the GL thread if the device can't share contexts.
+     * Takes effect when the GL context is created, so it should be set before the view is shown.
+     */
+    public void setBackgroundUploads(boolean value){
+        mContextFactory.setEnabled(value);
+    }
+
+    public boolean isBackgroundUploads(){
+        return mContextFactory.isEnabled();
+    }
+
+    /**
+     * Limit the texture uploads of a frame, the covers over the limit are uploaded in the next frames,
+     * nearest to the center first. At least one cover is uploaded per frame.
+     *
+     * @param maxBytes bytes per frame, 0 for no limit
+     * @param maxMillis milliseconds per frame, 0 for no limit
+     */
+    public void setTextureUploadBudget(final int maxBytes, final long maxMillis){
+        queueEvent(new Runnable() {
+            @Override
+            public void run() {
+                mUploadQueue.setBudget(maxBytes, maxMillis);
+            }
+        });
+    }
+
+    /**
+     * The number of covers waiting for their texture upload.
+     */
+    public int getPendingUploadCount(){
+        return mUploadQueue.getPendingCount();
+    }
+
+    /**
+     * The size of the cover textures. {@link EQuality#AUTO} picks the size and the number of cached tiles
+     * from the viewport, GL_MAX_TEXTURE_SIZE, the memory class and the display density when the surface
+     * changes, {@link #setMaxTiles(int)} is overridden then.
+     */
     public void setImageQuality(EQuality size){
-        imageSize = size.getValue();
+        autoQuality = size == EQuality.AUTO;
+        if(!autoQuality){
+            imageSize = size.getValue();
+        }
+    }
+
+    /**
+     * Any size for the cover textures, not only the ones of {@link EQuality}.
+     * Textures of other sizes than a power of two are padded on GPUs without npot support.
+     * Must be set before {@link #setImagesList(List)}.
+     */
+    public void setImageSize(int size){
+        autoQuality = false;
+        imageSize = size;
+    }
+
+    /**
+     * The size of the cover textures, for {@link EQuality#AUTO} known once the surface is there.
+     */
+    public int getImageSize(){
+        return imageSize;
     }
 
     public void setImageShowBlackBars(boolean value){
         showBlackBars = value;
     }
 
+    /**
+     * How the pixel format of the cover textures is chosen, {@link EFormatPolicy#AUTO} by default.
+     * Must be set before {@link #setImagesList(List)}.
+     */
+    public void setTextureFormatPolicy(EFormatPolicy policy){
+        formatPolicy = policy;
+    }
+
+    public EFormatPolicy getTextureFormatPolicy(){
+        return formatPolicy;
+    }
+
+    /**
+     * Upload the covers at their own aspect ratio instead of padding them to square textures,
+     * the tiles are letterboxed by their geometry. Textures are non power of two where the GPU
+     * takes them, otherwise padded only to the next power of two.
+     * Must be set before {@link #setImagesList(List)}.
+     */
+    public void setAspectExactTextures(boolean value){
+        aspectExactTextures = value;
+    }
+
+    public boolean isAspectExactTextures(){
+        return aspectExactTextures;
+    }
+
+    /**
+     * Pack the covers into a texture atlas and draw all visible tiles with one call.
+     * Takes effect on the next surface change, so it should be set before the view is shown.
+     */
+    public void setBatchedRendering(boolean value){
+        batchedRendering = value;
+    }
+
+    public boolean isBatchedRendering(){
+        return batchedRendering;
+    }
+
+    /**
+     * Draw the opaque covers front to back with blending off and a depth test, so hidden pixels
+     * are never shaded, and the background only where no cover is. Covers with transparent
+     * pixels are still blended back to front over them.
+     */
+    public void setFrontToBackRendering(final boolean value){
+        frontToBack = value;
+        queueEvent(new Runnable() {
+            @Override
+            public void run() {
+                mRenderer.setFrontToBack(value);
+            }
+        });
+        requestRender();
+    }
+
+    public boolean isFrontToBackRendering(){
+        return frontToBack;
+    }
+
+    /**
+     * Get the cost of every frame, called on the GL thread. Null to stop.
+     */
+    public void setFrameMetricsListener(FrameMetricsListener listener){
+        mFrameMetricsListener = listener;
+    }
+
+    /**
+     * Rolling percentiles of the last frames, can be read from any thread.
+     */
+    public FrameStats getFrameStats(){
+        return mFrameStats;
+    }
+
+    /**
+     * Show the frame timing over the gallery: a bar per frame, red for dropped frames,
+     * and the percentiles of {@link #getFrameStats()}.
+     */
+    public void setHudEnabled(boolean value){
+        hudEnabled = value;
+        requestRender();
+    }
+
+    public boolean isHudEnabled(){
+        return hudEnabled;
+    }
+
+    /**
+     * Show a small preview of every cover first, decoded at a quarter of the texture size or taken from
+     * {@link #setThumbnailsList(List)}. The full resolution is loaded only for the tiles next to the center
+     * once the scrolling settled, tiles that only fly past never cost a full decode.
+     * Must be set before {@link #setImagesList(List)}.
+     */
+    public void setProgressiveLoading(boolean value){
+        progressiveLoading = value;
+    }
+
+    public boolean isProgressiveLoading(){
+        return progressiveLoading;
+    }
+
+    /**
+     * Urls of small versions of the covers for the progressive loading, in the order of the images list.
+     * Must be set before {@link #setImagesList(List)}.
+     */
+    public void setThumbnailsList(List<String> thumbnailsList){
+        this.thumbnailsList = thumbnailsList;
+    }
+
+    /**
+     * Load every tile only as large as it is drawn at its distance from the center, the texture is
+     * upgraded level by level as the tile moves toward the center. The textures get mipmaps,
+     * so the tiles don't shimmer while they shrink.
+     * Must be set before {@link #setImagesList(List)}.
+     */
+    public void setLevelOfDetail(boolean value){
+        levelOfDetail = value;
+    }
+
+    public boolean isLevelOfDetail(){
+        return levelOfDetail;
+    }
+
+    /**
+     * Start loading the tiles a fling comes to rest on as soon as it begins, the tiles it passes
+     * at speed are not loaded. The landing tile is loaded at the full resolution.
+     *
+     * @param radius the tiles left and right of the landing tile
+     * @param budget the most loads a fling starts ahead, 0 to load the tiles only when they are drawn
+     */
+    public void setPrefetch(int radius, int budget){
+        prefetchRadius = Math.max(0, radius);
+        prefetchBudget = Math.max(0, budget);
+    }
+
+    public int getPrefetchRadius(){
+        return prefetchRadius;
+    }
+
+    public int getPrefetchBudget(){
+        return prefetchBudget;
+    }
+
+    /**
+     * Cancel the pending download, decode and upload of the covers that move farther away from
+     * the center, so they don't hold up the covers on the screen. Their textures are kept.
+     *
+     * @param tiles the tiles left and right of the center that keep their loads, 0 never cancels
+     */
+    public void setRetentionWindow(int tiles){
+        retentionWindow = Math.max(0, tiles);
+    }
+
+    public int getRetentionWindow(){
+        return retentionWindow;
+    }
+
+    private int getPreviewSize(){
+        return progressiveLoading ? Math.max(MIN_PREVIEW_SIZE, imageSize / 4) : 0;
+    }
+
+    /**
+     * The number of draw calls issued by the last frame, including the background.
+     */
+    public int getDrawCallCount(){
+        return mRenderer.getDrawCallCount();
+    }
+
+    /**
+     * The GL state cache of the renderer, with the counters of issued and suppressed state changes.
+     */
+    public GLStateCache getStateCache(){
+        return mRenderer.getStateCache();
+    }
+
     public void setImagesList(List<String> imagesList){
         this.imagesList = imagesList;
 
         if(imagesList != null && imagesList.size() > 0){
             images = new ArrayList<CoverImage>(imagesList.size());
 
-            for(String imageUrl : imagesList){
+            for(int i = 0; i < imagesList.size(); i++){
+                String thumbnailUrl = thumbnailsList != null && i < thumbnailsList.size() ? thumbnailsList.get(i) : null;
+
                 CoverImage ci = new CoverImage(mActivity, aQuery)
-                        .setUrl(imageUrl)
+                        .setUrl(imagesList.get(i))
+                        .setThumbnailUrl(thumbnailUrl)
+                        .setPreviewSize(getPreviewSize())
+                        .setMipmaps(levelOfDetail)
                         .setImageSize(imageSize)
-                        .setShowBlackBars(showBlackBars);
+                        .setShowBlackBars(showBlackBars)
+                        .setFormatPolicy(formatPolicy)
+                        .setAspectExact(aspectExactTextures)
+                        .setUploadQueue(mUploadQueue)
+                        .setLoadScheduler(mLoadScheduler);
                 images.add(ci);
             }
         }
@@ -409,7 +1153,7 @@ public class CoverFlowOpenGL extends GLSurfaceView implements GLSurfaceView.Rend
         if(images != null && images.size() > 0){
             position = Math.min(position, images.size() - 1);
         }
-        mOffset = position;
+        setOffset(position, 0);
 
         requestRender();
     }
@@ -432,43 +1176,104 @@ public class CoverFlowOpenGL extends GLSurfaceView implements GLSurfaceView.Rend
 
 	@Override
 	public void onDrawFrame(GL10 gl) {
-        gl.glMatrixMode(GL10.GL_MODELVIEW);
-        gl.glLoadIdentity();
+        long frameStart = System.nanoTime();
+        TraceCompat.beginSection("CoverFlow draw");
 
-        // clear Screen and Depth Buffer
-        gl.glDisable(GL10.GL_DEPTH_TEST);
-        gl.glClearColor(0, 0, 0, 0);
-        gl.glClear(GL10.GL_COLOR_BUFFER_BIT);
+        SharedContextUploader uploader = mContextFactory.getUploader();
+        if(uploader != null){
+            // textures finished on the upload thread since the last frame
+            uploader.drain();
+        }
+
+        mScrollState.read(mFrameSnapshot);
+        updateRenderAnimation(mFrameSnapshot, System.nanoTime());
+
+        if(mAtlas != null){
+            mAtlas.beginFrame();
+        }
+        mTextureManager.beginFrame();
 
-        // Drawing
-        gl.glTranslatef(0.0f, 0.0f, 0.0f);		// move 5 units INTO the screen
+        mRenderer.beginFrame();
 
         if(mBackground != null){
-            mBackground.draw(gl);
+            mRenderer.drawBackground(mBackground);
+        }
+
+        final float offset = mFrameSnapshot.getOffset();
+        int flingTarget = prefetchBudget > 0 ? mFlingTarget : NO_FLING_TARGET;
+        if(offset != mLastFrameOffset || flingTarget != mPrefetchedTarget){
+            // the loads nearest to the new center go next, during a fling the ones it comes to rest on
+            mLoadScheduler.setCenter(flingTarget != NO_FLING_TARGET ? flingTarget : offset);
+        }
+
+        // only the tiles that land on the screen are drawn and loaded
+        int count = imagesList != null ? imagesList.size() : 0;
+        mCullLayout.update(mWidth, mHeight, visibleTiles, AbstractImage.getDesiredSize(mWidth, mHeight, imageSize));
+        mCullLayout.getVisibleRange(offset, count, mCullPlacement, mVisibleRange);
+
+        if(flingTarget != mPrefetchedTarget){
+            mPrefetchedTarget = flingTarget;
+            if(flingTarget != NO_FLING_TARGET){
+                prefetch(flingTarget, count);
+            }
         }
+        mSkippingTiles = flingTarget != NO_FLING_TARGET && Math.abs(mFrameSnapshot.getVelocity()) > PREFETCH_SKIP_SPEED;
+
+        // the covers that came in since the last frame, within the budget
+        TraceCompat.beginSection("CoverFlow upload");
+        mUploadQueue.process(offset, Math.max(offset - mVisibleRange[0], mVisibleRange[1] - offset) + 1);
+        TraceCompat.endSection();
 
-        final float offset = mOffset;
+        mTilesDrawn = 0;
+        mPlaceholderTiles = 0;
+        mSettled = mFrameSnapshot.getVelocity() == 0 && Math.abs(offset - Math.round(offset)) < SETTLED_DISTANCE;
         int i;
 
-        int max = imagesList != null ? imagesList.size() - 1 : 0;
         int mid = (int) Math.floor(offset + 0.5);
-        int iStartPos = mid - visibleTiles;
+        int iStartPos = mVisibleRange[0];
 
-        if (iStartPos < 0)
-            iStartPos = 0;
-        // draw the left tiles
-        for (i = iStartPos; i < mid; ++i) {
-            drawTile(i, i - offset, gl);
+        if(retentionWindow > 0 && (mid != mRetentionCenter || mPrefetchedTarget != mRetentionTarget)){
+            // cancel the loads of the covers left behind before the tiles below start new ones
+            mRetentionCenter = mid;
+            mRetentionTarget = mPrefetchedTarget;
+            mTextureManager.cancelLoads(mRetention);
         }
 
-        // draw the right tiles
-        int iEndPos = mid + visibleTiles;
-        if (iEndPos > max)
-            iEndPos = max;
-        for (i = iEndPos; i >= mid; --i) {
-            drawTile(i, i - offset, gl);
+        // an empty range, e.g. the center tile is culled before the layout, draws nothing
+        int iEndPos = mVisibleRange[1];
+        if(iEndPos >= iStartPos){
+            // draw the left tiles
+            int iLeftEnd = Math.min(mid, iEndPos + 1);
+            for (i = iStartPos; i < iLeftEnd; ++i) {
+                drawTile(i, i - offset);
+            }
+
+            // draw the right tiles
+            for (i = iEndPos; i >= mid && i >= iStartPos; --i) {
+                drawTile(i, i - offset);
+            }
         }
 
+        mRenderer.endFrame();
+
+        // the covers that weren't drawn give their textures back if over budget
+        mTextureManager.trim(gl);
+
+        updateHud(gl);
+        if(mHud != null){
+            mHud.update(mFrameStats, mFrameMetrics, frameStart);
+            mRenderer.drawOverlay(mHud);
+        }
+
+        boolean uploadsPending = mUploadQueue.getPendingCount() > 0;
+        if(uploadsPending){
+            // the rest of the uploads carry over to the next frame
+            requestRender();
+        }
+
+        TraceCompat.endSection();
+        recordFrame(frameStart, offset, uploadsPending);
+
         //draw the center tile
         if (mLastOffset != (int) offset) {
             mListener.tileOnTop(this, (int) offset);
@@ -476,42 +1281,152 @@ public class CoverFlowOpenGL extends GLSurfaceView implements GLSurfaceView.Rend
         }
 	}
 
-    private void drawTile(int position, float off, GL10 gl) {
-        CoverImage cacheImg = mCache.objectForKey(position);
+    /**
+     * Create or release the HUD on the GL thread as {@link #setHudEnabled(boolean)} asked.
+     */
+    private void updateHud(GL10 gl){
+        if(hudEnabled && mHud == null){
+            mHud = new HudOverlay(mActivity);
+            mHud.setGL(gl);
+            mHud.setStateCache(mRenderer.getStateCache());
+            mHud.initBuffers(mWidth, mHeight);
+        } else if(!hudEnabled && mHud != null){
+            mHud.release();
+            mHud = null;
+        }
+    }
+
+    /**
+     * Load the landing tile of a fling and its neighbours, nearest first, within the budget.
+     */
+    private void prefetch(int target, int count){
+        int loads = 0;
+        for(int d = 0; d <= prefetchRadius && loads < prefetchBudget; d++){
+            if(prefetchTile(target - d, target, count)){
+                loads++;
+            }
+            if(d > 0 && loads < prefetchBudget && prefetchTile(target + d, target, count)){
+                loads++;
+            }
+        }
+    }
+
+    /**
+     * @return true if a load was started for the tile
+     */
+    private boolean prefetchTile(int position, int target, int count){
+        if(position < 0 || position >= count){
+            return false;
+        }
+
+        CoverImage cacheImg = mTextureManager.get(position);
+        CoverImage img = cacheImg != null ? cacheImg : images.get(position);
+
+        // the size it is drawn at when the fling ends, an upgrade if it is loaded already
+        if(progressiveLoading && Math.abs(position - target) <= FULL_RESOLUTION_DISTANCE){
+            img.requestFullResolution();
+        } else if(levelOfDetail){
+            img.requestSize(getLodSize(position - target));
+        }
+
+        if(cacheImg != null){
+            return false;
+        }
+
+        img.tryLoadTexture(dataChangedListener, position);
+        mTextureManager.put(position, img);
+        return true;
+    }
+
+    /**
+     * The smallest level of the texture, the image size halved, that still covers the tile at the given offset.
+     */
+    private int getLodSize(float off){
+        mCullLayout.getPlacement(off, mCullPlacement);
+        float needed = imageSize * mCullPlacement[2] / AbstractImage.getDesiredSize(mWidth, mHeight, imageSize);
+
+        int size = imageSize;
+        while(size / 2 >= needed && size / 2 >= MIN_LOD_SIZE){
+            size /= 2;
+        }
+        return size;
+    }
+
+    private void recordFrame(long frameStart, float offset, boolean uploadsPending){
+        long frameEnd = System.nanoTime();
+        long interval = mFrameContinues ? frameStart - mLastFrameStart : 0;
+
+        long input = mPendingInputTime.getAndSet(0);
+        long latency = input != 0 ? SystemClock.uptimeMillis() - input : -1;
+
+        mFrameMetrics.set(frameStart, frameEnd - frameStart, interval,
+                mUploadQueue.getLastFrameUploads(), mUploadQueue.getLastFrameBytes(), mRenderer.getDrawCallCount(),
+                mTilesDrawn, mPlaceholderTiles, latency);
+        mFrameStats.add(mFrameMetrics);
+
+        // a moving gallery or pending work means the next frame should follow right away
+        mFrameContinues = offset != mLastFrameOffset || uploadsPending || mRenderAnimating
+                || getRenderMode() == RENDERMODE_CONTINUOUSLY;
+        mLastFrameOffset = offset;
+        mLastFrameStart = frameStart;
+
+        FrameMetricsListener listener = mFrameMetricsListener;
+        if(listener != null){
+            listener.onFrameMetrics(this, mFrameMetrics);
+        }
+    }
+
+    private void drawTile(int position, float off) {
+        CoverImage cacheImg = mTextureManager.get(position);
+
+        if(levelOfDetail){
+            // before the first load, so a far tile starts small
+            int lodSize = getLodSize(off);
+            (cacheImg != null ? cacheImg : images.get(position)).requestSize(lodSize);
+
+            if(mSettled && cacheImg != null){
+                // a tile left far from the center gives the memory of its large level back
+                cacheImg.reduceSize(lodSize);
+            }
+        }
 
         boolean canDraw = false;
 
-        if(cacheImg == null){
+        // a tile passed at speed isn't loaded, it would only delay the tiles the fling comes to rest on
+        boolean passed = mSkippingTiles && Math.abs(position - mPrefetchedTarget) > prefetchRadius;
+
+        if(cacheImg == null && !passed){
             cacheImg = images.get(position);
             cacheImg.tryLoadTexture(dataChangedListener, position);
-            mCache.putObjectForKey(position, cacheImg);
+            mTextureManager.put(position, cacheImg);
 
             if (cacheImg.getTexture() != 0){
                 canDraw = true;
             }
-        } else if(cacheImg.getTexture() != 0){
+        } else if(cacheImg != null && cacheImg.getTexture() != 0){
             canDraw = true;
         }
 
-        float desiredSize = canDraw ? cacheImg.getDesiredSize() : emptyImage.getDesiredSize();
-        float spread = (mWidth - desiredSize) * 0.5f / visibleTiles;
-        float trans = off * spread;
-        float sc = 1.0f - (Math.abs(off) * 1 / (visibleTiles + 1));
+        if(mSettled && progressiveLoading && cacheImg != null && Math.abs(off) <= FULL_RESOLUTION_DISTANCE){
+            cacheImg.requestFullResolution();
+        }
+
+        AbstractImage<?> tile = canDraw ? cacheImg : emptyImage;
 
-        if(canDraw){
-            cacheImg.draw(gl, trans, sc);
-        } else {
-            emptyImage.draw(gl, trans, sc);
+        mTilesDrawn++;
+        if(!canDraw){
+            mPlaceholderTiles++;
         }
+
+        mRenderer.drawTile(tile, off);
     }
 
     private DataChangedListener dataChangedListener = new DataChangedListener() {
         @Override
         public void imageUpdated(int position) {
-            synchronized(this) {
-                if(mOffset - visibleTiles < position || position < mOffset + visibleTiles  ){
-                    requestRender();
-                }
+            float offset = getOffset();
+            if(offset - visibleTiles < position || position < offset + visibleTiles  ){
+                requestRender();
             }
         }
     };
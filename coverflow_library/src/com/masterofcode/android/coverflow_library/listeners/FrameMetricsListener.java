@@ -0,0 +1,11 @@
+package com.masterofcode.android.coverflow_library.listeners;
+
+import com.masterofcode.android.coverflow_library.CoverFlowOpenGL;
+import com.masterofcode.android.coverflow_library.utils.FrameMetrics;
+
+/**
+ * Called on the GL thread after every frame, keep it short. The metrics object is reused.
+ */
+public interface FrameMetricsListener {
+    public void onFrameMetrics(CoverFlowOpenGL view, FrameMetrics metrics);
+}
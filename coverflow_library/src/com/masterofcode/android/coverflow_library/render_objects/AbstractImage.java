@@ -2,32 +2,60 @@ package com.masterofcode.android.coverflow_library.render_objects;
 
 import android.app.Activity;
 import android.graphics.Bitmap;
-import android.opengl.GLUtils;
+import android.opengl.ETC1Util;
 import com.masterofcode.android.coverflow_library.listeners.DataChangedListener;
+import com.masterofcode.android.coverflow_library.renderer.GLStateCache;
+import com.masterofcode.android.coverflow_library.renderer.SharedContextUploader;
+import com.masterofcode.android.coverflow_library.renderer.TexturePool;
+import com.masterofcode.android.coverflow_library.utils.CoverflowBitmapCallback;
 import com.masterofcode.android.coverflow_library.utils.CoverflowQuery;
+import com.masterofcode.android.coverflow_library.utils.EFormatPolicy;
+import com.masterofcode.android.coverflow_library.utils.TextureFormats;
 
 import javax.microedition.khronos.opengles.GL10;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.FloatBuffer;
 
-public abstract class AbstractImage<T extends AbstractImage<T>> {
-    protected FloatBuffer vertexBuffer;	// buffer holding the vertices
-    protected FloatBuffer textureBuffer;	// buffer holding the texture coordinates
-
-    protected float texture[] = new float[]{
+public abstract class AbstractImage<T extends AbstractImage<T>> implements SharedContextUploader.Target {
+    private static final float DEFAULT_TEXTURE[] = new float[]{
             // Mapping coordinates for the vertices
             0f, 1f,     // top left
             1f, 1f,     // top right
             0f, 0f,     // bottom left
             1f, 0f,     // bottom right
     };
+
+    private static final float DEFAULT_QUAD[] = new float[]{0f, 0f, 1f, 1f};
+
+    protected FloatBuffer vertexBuffer;	// buffer holding the vertices
+    protected FloatBuffer textureBuffer;	// buffer holding the texture coordinates
+
+    protected float texture[] = DEFAULT_TEXTURE.clone();
+    protected final float[] quad = DEFAULT_QUAD.clone(); // left, bottom, right, top of the image in its tile, 0..1
     protected int[] textures = new int[1];
 
+    protected TextureAtlas atlas;
+    protected int atlasSlot = -1;
+
+    protected SharedContextUploader uploader;
+    protected TexturePool texturePool;
+
+    // the storage of the own texture, for the pool. A format of 0 is never pooled
+    private int storageWidth;
+    private int storageHeight;
+    private int storageFormat;
+    private int storageType;
+    private boolean storageMipmapped;
+    protected boolean uploading;
+    protected int uploadGeneration; // uploads started before the last removeTexture are stale
+    private Geometry swapGeometry;  // the texture uploading next to the current one, applied when it is swapped in
+
     protected String mUrl;
 
     protected Activity mActivity;
     protected GL10 mGL;
+    protected GLStateCache mStateCache;
 
     protected int resId;
 
@@ -40,13 +68,19 @@ public abstract class AbstractImage<T extends AbstractImage<T>> {
     protected int viewportHeight;
 
     protected boolean isTextureInit;
+    protected int textureBytes; // GPU memory of the texture, 0 without one
+    protected boolean opaque; // the texture has no transparent pixels
 
     protected boolean showBlackBars = true;
-    protected boolean downloadingImage;
+    protected boolean aspectExact;
+    protected boolean npotTextures;
+    protected boolean mipmaps;
+    protected EFormatPolicy formatPolicy = EFormatPolicy.AUTO;
+    protected volatile boolean downloadingImage;  // written by the load callback on the UI thread
 
     protected DataChangedListener dataChangedListener;
 
-    protected Bitmap loadedBitmap;
+    protected volatile Bitmap loadedBitmap;
 
     public AbstractImage(Activity activity,  int resId){
         this.mActivity = activity;
@@ -78,6 +112,31 @@ public abstract class AbstractImage<T extends AbstractImage<T>> {
         return (T)this;
     }
 
+    /**
+     * The state cache of the renderer, told about textures bound by uploads.
+     */
+    public T setStateCache(GLStateCache stateCache){
+        this.mStateCache = stateCache;
+        return (T)this;
+    }
+
+    /**
+     * Upload the textures on the upload thread instead of the GL thread, null to upload here.
+     * Atlas cells are still filled on the GL thread.
+     */
+    public T setUploader(SharedContextUploader uploader){
+        this.uploader = uploader;
+        return (T)this;
+    }
+
+    /**
+     * Take the textures from the pool and give them back instead of creating and deleting them, null to stop.
+     */
+    public T setTexturePool(TexturePool texturePool){
+        this.texturePool = texturePool;
+        return (T)this;
+    }
+
     public T setViewportData(int width, int height){
         this.viewportWidth = width;
         this.viewportHeight = height;
@@ -89,24 +148,123 @@ public abstract class AbstractImage<T extends AbstractImage<T>> {
         return (T)this;
     }
 
-    public void initBuffers(){
+    public T setFormatPolicy(EFormatPolicy formatPolicy) {
+        this.formatPolicy = formatPolicy;
+        return (T)this;
+    }
+
+    /**
+     * Keep the aspect ratio of the image in the texture instead of padding it to a square,
+     * the tile is letterboxed by its quad.
+     */
+    public T setAspectExact(boolean aspectExact) {
+        this.aspectExact = aspectExact;
+        return (T)this;
+    }
+
+    /**
+     * Whether the GPU takes textures of any size, otherwise they are padded to the next power of two.
+     */
+    public T setNpotTextures(boolean npotTextures) {
+        this.npotTextures = npotTextures;
+        return (T)this;
+    }
 
+    /**
+     * Give the own textures mipmaps, so tiles drawn smaller than the texture don't shimmer and read less memory.
+     * Only power of two textures that aren't padded get them, atlas cells and ETC1 textures never do.
+     */
+    public T setMipmaps(boolean mipmaps) {
+        this.mipmaps = mipmaps;
+        return (T)this;
+    }
+
+    /**
+     * Upload the texture into a cell of the atlas instead of a texture of its own.
+     * Pass null to go back to a separate texture.
+     */
+    public T setAtlas(TextureAtlas atlas){
+        if(this.atlas != atlas){
+            releaseAtlasSlot();
+            this.atlas = atlas;
+        }
+        return (T)this;
+    }
+
+    /**
+     * Called by the atlas when the cell was given to another image.
+     */
+    void onAtlasSlotEvicted(){
+        atlasSlot = -1;
+        textures[0] = 0;
+        storageFormat = 0;
+        textureBytes = 0;
+        isTextureInit = false;
+        opaque = false;
+        System.arraycopy(DEFAULT_TEXTURE, 0, texture, 0, texture.length);
+        System.arraycopy(DEFAULT_QUAD, 0, quad, 0, quad.length);
+    }
+
+    /**
+     * Fit the quad of an image of the given size into the square tile, centered.
+     */
+    protected void setQuad(int width, int height){
+        float max = Math.max(width, height);
+        float w = width / max;
+        float h = height / max;
+
+        quad[0] = (1f - w) / 2;
+        quad[1] = (1f - h) / 2;
+        quad[2] = quad[0] + w;
+        quad[3] = quad[1] + h;
+    }
+
+    /**
+     * Texture coordinates of an image of the given size in the top left corner of the texture.
+     * A padded edge is inset by half a texel, so linear filtering doesn't pull in the padding.
+     */
+    protected void setTextureRect(int width, int height, int textureWidth, int textureHeight){
+        float right = width < textureWidth ? (width - 0.5f) / textureWidth : 1f;
+        float bottom = height < textureHeight ? (height - 0.5f) / textureHeight : 1f;
+
+        texture[0] = 0f;    texture[1] = bottom;
+        texture[2] = right; texture[3] = bottom;
+        texture[4] = 0f;    texture[5] = 0f;
+        texture[6] = right; texture[7] = 0f;
+    }
+
+    /**
+     * The size of the center tile on the screen, the same for all images of a gallery.
+     */
+    public static float getDesiredSize(int viewportWidth, int viewportHeight, int imageSize){
         float sx = Math.abs((float)viewportWidth / imageSize);
         float sy = Math.abs((float)viewportHeight / imageSize);
 
         float scale = Math.min(sx, sy);
 
-        desiredSize = (imageSize * scale);
+        float desiredSize = (imageSize * scale);
         desiredSize -= desiredSize * 0.1f; //offset from the edge of the screen
+        return desiredSize;
+    }
+
+    public void initBuffers(){
+
+        desiredSize = getDesiredSize(viewportWidth, viewportHeight, imageSize);
 
         float x = 0f;//(viewportWidth - desiredSize) * 0.5f;
         float y = 0f;//(viewportHeight - desiredSize) * 0.5f;
 
+        // letterboxed inside the tile when the image isn't square
+        float left = x + quad[0] * desiredSize;
+        float bottom = y + quad[1] * desiredSize;
+        float right = x + quad[2] * desiredSize;
+        float top = y + quad[3] * desiredSize;
+
         float vertices[] = {
-                x, y,         //Bottom Left
-                x + desiredSize, y, 	//Bottom Right
-                x, y + desiredSize, 	//Top Left
-                x + desiredSize, y + desiredSize,    //Top Right
+                left, bottom,         //Bottom Left
+                right, bottom, 	//Bottom Right
+                left, top, 	//Top Left
+                right, top,    //Top Right
         };
 
 
@@ -137,99 +295,429 @@ public abstract class AbstractImage<T extends AbstractImage<T>> {
      * Load the texture for the square
      */
     protected int loadGLTexture(Bitmap bitmap) {
+        return loadGLTexture(bitmap, false);
+    }
+
+    /**
+     * Load the texture for the square
+     *
+     * @param swap keep the current texture until the new one is uploaded and swap it in then,
+     *             so a new level leaves no gap. Without an uploader the texture is replaced right away.
+     */
+    protected int loadGLTexture(Bitmap bitmap, boolean swap) {
 
         if(bitmap == null || mGL == null){
             return 0;
         }
 
-        removeTexture();
+        boolean async = uploader != null && uploader.isRunning();
+        swap = swap && async && textures[0] != 0;
+        if(!swap){
+            removeTexture();
+        }
+
+        // atlas pages are color, a luminance texture keeps its own
+        if(atlas != null && !TextureFormats.isLuminance(bitmap)){
+            if(swap){
+                // the cell is written on the GL thread, the old texture goes in the same frame
+                removeTexture();
+                swap = false;
+            }
+
+            int slot = atlas.upload(this, bitmap);
+            if(slot >= 0){
+                atlasSlot = slot;
+                textures[0] = atlas.getTexture(slot);
+                opaque = atlas.isOpaque();
+                textureBytes = atlas.getCellBytes();
+                atlas.getTextureCoordinates(slot, bitmap.getWidth(), bitmap.getHeight(), texture);
+                setQuad(bitmap.getWidth(), bitmap.getHeight());
+                invalidateBoundTexture();
+
+                // Clean up, the pixels go to the next decode
+                CoverflowBitmapCallback.releaseBitmap(bitmap);
+                loadedBitmap = null;
+
+                initBuffers();
+
+                return textures[0];
+            }
+        }
+
+        Geometry geometry = new Geometry();
+        geometry.width = bitmap.getWidth();
+        geometry.height = bitmap.getHeight();
+        geometry.textureWidth = npotTextures ? geometry.width : TextureFormats.nextPowerOfTwo(geometry.width);
+        geometry.textureHeight = npotTextures ? geometry.height : TextureFormats.nextPowerOfTwo(geometry.height);
+        geometry.opaque = TextureFormats.isOpaque(bitmap);
+        geometry.format = TextureFormats.getFormat(bitmap);
+        geometry.type = TextureFormats.getType(bitmap);
+
+        int textureWidth = geometry.textureWidth;
+        int textureHeight = geometry.textureHeight;
+        boolean mipmapped = mipmaps && TextureFormats.canMipmap(bitmap, textureWidth, textureHeight);
+        geometry.mipmapped = mipmapped;
+
+        // the mipmap levels add a third
+        geometry.bytes = textureWidth * textureHeight * TextureFormats.getBytesPerPixel(bitmap);
+        if(mipmapped){
+            geometry.bytes += geometry.bytes / 3;
+        }
+
+        if(async){
+            // the texture shows up with onTextureUploaded, the uploader gives the bitmap to the pool
+            uploading = true;
+            loadedBitmap = null;
+            if(swap){
+                swapGeometry = geometry;
+            } else {
+                setGeometry(geometry);
+            }
+            uploader.upload(this, bitmap, textureWidth, textureHeight, mipmapped, uploadGeneration);
+            return 0;
+        }
+
+        setGeometry(geometry);
+        int format = geometry.format;
+        int type = geometry.type;
+
+        int pooled = texturePool != null ? texturePool.acquire(textureWidth, textureHeight, format, type, mipmapped) : 0;
+        if(pooled != 0){
+            // the storage is there already
+            textures[0] = pooled;
+            mGL.glBindTexture(GL10.GL_TEXTURE_2D, pooled);
+            TextureFormats.texSubImage2D(bitmap, mipmapped);
+        } else {
+            genTexture(mipmapped);
+
+            // Use Android GLUtils to specify a two-dimensional texture image from our bitmap
+            if(mipmapped){
+                TextureFormats.texImage2DMipmapped(bitmap);
+            } else {
+                TextureFormats.texImage2D(mGL, bitmap, textureWidth, textureHeight);
+            }
+        }
+        invalidateBoundTexture();
+
+        // Clean up, the pixels go to the next decode
+        CoverflowBitmapCallback.releaseBitmap(bitmap);
+        if(loadedBitmap !=null){
+            loadedBitmap = null;
+        }
+
+        initBuffers();
+
+        return textures[0];
+    }
+
+    /**
+     * Load an ETC1 compressed texture, never put into the atlas.
+     */
+    protected int loadCompressedTexture(ETC1Util.ETC1Texture compressed) {
+        return loadCompressedTexture(compressed, false);
+    }
+
+    /**
+     * Load an ETC1 compressed texture, never put into the atlas.
+     *
+     * @param swap keep the current texture until the new one is uploaded, see {@link #loadGLTexture(Bitmap, boolean)}
+     */
+    protected int loadCompressedTexture(ETC1Util.ETC1Texture compressed, boolean swap) {
 
+        if(compressed == null || mGL == null){
+            return 0;
+        }
+
+        boolean async = uploader != null && uploader.isRunning();
+        swap = swap && async && textures[0] != 0;
+        if(!swap){
+            removeTexture();
+        }
+
+        // never padded, callers only pass sizes the GPU takes
+        Geometry geometry = new Geometry();
+        geometry.width = geometry.textureWidth = compressed.getWidth();
+        geometry.height = geometry.textureHeight = compressed.getHeight();
+        // ETC1 has no alpha
+        geometry.opaque = true;
+        geometry.bytes = compressed.getData().capacity();
+
+        if(async){
+            uploading = true;
+            if(swap){
+                swapGeometry = geometry;
+            } else {
+                setGeometry(geometry);
+            }
+            uploader.upload(this, compressed, uploadGeneration);
+            return 0;
+        }
+
+        setGeometry(geometry);
+
+        genTexture();
+
+        // decompressed by ETC1Util if the GPU can't do ETC1
+        ETC1Util.loadTexture(GL10.GL_TEXTURE_2D, 0, 0, GL10.GL_RGB, GL10.GL_UNSIGNED_SHORT_5_6_5, compressed);
+
+        invalidateBoundTexture();
+
+        initBuffers();
+
+        return textures[0];
+    }
+
+    protected void genTexture(){
+        genTexture(false);
+    }
+
+    /**
+     * @param mipmapped the texture gets all mipmap levels and is minified trilinear
+     */
+    protected void genTexture(boolean mipmapped){
         // generate one texture pointer
         mGL.glGenTextures(1, textures, 0);
         // ...and bind it to our array
         mGL.glBindTexture(GL10.GL_TEXTURE_2D, textures[0]);
 
         // create nearest filtered texture
-        mGL.glTexParameterf(GL10.GL_TEXTURE_2D, GL10.GL_TEXTURE_MIN_FILTER, GL10.GL_LINEAR);
+        mGL.glTexParameterf(GL10.GL_TEXTURE_2D, GL10.GL_TEXTURE_MIN_FILTER,
+                mipmapped ? GL10.GL_LINEAR_MIPMAP_LINEAR : GL10.GL_LINEAR);
         mGL.glTexParameterf(GL10.GL_TEXTURE_2D, GL10.GL_TEXTURE_MAG_FILTER, GL10.GL_NEAREST);
 
-        //Different possible texture parameters, e.g. GL10.GL_CLAMP_TO_EDGE
-        mGL.glTexParameterf(GL10.GL_TEXTURE_2D, GL10.GL_TEXTURE_WRAP_S, GL10.GL_REPEAT);
-        mGL.glTexParameterf(GL10.GL_TEXTURE_2D, GL10.GL_TEXTURE_WRAP_T, GL10.GL_REPEAT);
+        // clamped, non power of two textures can't repeat
+        mGL.glTexParameterf(GL10.GL_TEXTURE_2D, GL10.GL_TEXTURE_WRAP_S, GL10.GL_CLAMP_TO_EDGE);
+        mGL.glTexParameterf(GL10.GL_TEXTURE_2D, GL10.GL_TEXTURE_WRAP_T, GL10.GL_CLAMP_TO_EDGE);
+    }
 
-        // Use Android GLUtils to specify a two-dimensional texture image from our bitmap
-        GLUtils.texImage2D(GL10.GL_TEXTURE_2D, 0, bitmap, 0);
+    /**
+     * The size, format and memory of a texture.
+     */
+    private static class Geometry {
+        int width;
+        int height;
+        int textureWidth;
+        int textureHeight;
+        boolean opaque;
+        int bytes;
+        int format;     // 0 for a compressed texture, it isn't pooled
+        int type;
+        boolean mipmapped;
+    }
 
-        // Clean up
-        bitmap.recycle();
-        if(loadedBitmap !=null){
-            loadedBitmap = null;
+    private void setGeometry(Geometry geometry){
+        setQuad(geometry.width, geometry.height);
+        setTextureRect(geometry.width, geometry.height, geometry.textureWidth, geometry.textureHeight);
+        opaque = geometry.opaque;
+        textureBytes = geometry.bytes;
+        setStorage(geometry.textureWidth, geometry.textureHeight, geometry.format, geometry.type, geometry.mipmapped);
+    }
+
+    private void setStorage(int width, int height, int format, int type, boolean mipmapped){
+        storageWidth = width;
+        storageHeight = height;
+        storageFormat = format;
+        storageType = type;
+        storageMipmapped = mipmapped;
+    }
+
+    @Override
+    public void onTextureUploaded(int texture, int tag) {
+        if(tag != uploadGeneration){
+            // removed while it was uploading
+            mGL.glDeleteTextures(1, new int[] {texture}, 0);
+            return;
         }
 
+        uploading = false;
+
+        Geometry geometry = swapGeometry;
+        if(geometry != null){
+            // the new level is there, the old texture goes
+            removeTexture();
+            setGeometry(geometry);
+        }
+        setUploadedTexture(texture);
+    }
+
+    /**
+     * Take over a texture from the uploader, on the GL thread.
+     */
+    protected void setUploadedTexture(int texture){
+        textures[0] = texture;
         initBuffers();
+    }
 
-        return textures[0];
+    /**
+     * The GPU memory of the texture, counted from the start of its upload.
+     */
+    public int getTextureBytes(){
+        return textureBytes;
+    }
+
+    /**
+     * True if the image is drawn from a cell of the atlas instead of an own texture.
+     */
+    public boolean isInAtlas(){
+        return atlasSlot >= 0;
+    }
+
+    public boolean isUploading(){
+        return uploading;
     }
 
     public void removeTexture(){
-        if (textures[0] != 0) {
-            mGL.glDeleteTextures(1, new int[] {textures[0]}, 0);
+        uploadGeneration++;
+        uploading = false;
+        swapGeometry = null;
+
+        if (atlasSlot >= 0) {
+            releaseAtlasSlot();
+        } else if (textures[0] != 0) {
+            if(texturePool == null || storageFormat == 0 || !texturePool.release(textures[0],
+                    storageWidth, storageHeight, storageFormat, storageType, storageMipmapped)){
+                mGL.glDeleteTextures(1, textures, 0);
+            }
+            textures[0] = 0;
+            invalidateBoundTexture();
         }
 
+        storageFormat = 0;
+        textureBytes = 0;
         isTextureInit = false;
     }
 
+    /**
+     * Forget the texture without deleting it, it died with its EGL context.
+     * A pending bitmap stays, so the image can be uploaded again.
+     */
+    public void forgetTexture(){
+        uploadGeneration++;
+        uploading = false;
+        swapGeometry = null;
+
+        onAtlasSlotEvicted();
+        invalidateBoundTexture();
+    }
+
+    /**
+     * Follow a new viewport size, the texture is kept and only the buffers are rebuilt.
+     */
+    public void updateViewport(int width, int height){
+        setViewportData(width, height);
+
+        if(isReadyToDraw()){
+            initBuffers();
+        }
+    }
+
+    protected void invalidateBoundTexture(){
+        if(mStateCache != null){
+            mStateCache.invalidateTexture();
+        }
+    }
+
+    private void releaseAtlasSlot(){
+        if(atlasSlot >= 0 && atlas != null){
+            atlas.release(atlasSlot, this);
+            onAtlasSlotEvicted();
+        }
+    }
+
+    /**
+     * True if every pixel of the texture is opaque, the tile can be drawn without blending then.
+     */
+    public boolean isOpaque(){
+        return opaque;
+    }
+
     public float getDesiredSize(){
         return desiredSize;
     }
 
-    /** The draw method for the square with the GL context */
-    public void draw(GL10 gl, float translate, float scale) {
+    /**
+     * The GL name of the texture without triggering a load, 0 if there is none.
+     */
+    public int getTextureId(){
+        return textures[0];
+    }
+
+    /**
+     * True when the texture is uploaded and the buffers are set up, so the image can be drawn.
+     */
+    public boolean isReadyToDraw(){
+        return textures[0] != 0 && isTextureInit;
+    }
+
+    /**
+     * The texture coordinates for the bottom left, bottom right, top left and top right vertices.
+     */
+    public float[] getTextureCoordinates(){
+        return texture;
+    }
+
+    /**
+     * Left, bottom, right and top of the image inside its tile, as fractions of the tile size.
+     */
+    public float[] getQuad(){
+        return quad;
+    }
+
+    public FloatBuffer getVertexBuffer(){
+        return vertexBuffer;
+    }
+
+    public FloatBuffer getTextureBuffer(){
+        return textureBuffer;
+    }
+
+    public int getViewportWidth(){
+        return viewportWidth;
+    }
+
+    public int getViewportHeight(){
+        return viewportHeight;
+    }
+
+    /**
+     * The draw method for the square with the GL context
+     *
+     * @param state the state cache of the renderer, the client states are left enabled
+     * @param modelMatrix placement of the tile, loaded into the model view matrix as is
+     * @return true if a draw call was issued
+     */
+    public boolean draw(GL10 gl, GLStateCache state, float[] modelMatrix) {
 
         if (textures[0] == 0) {
-            return;
+            return false;
         }
 
         if(!isTextureInit){
-            return;
+            return false;
         }
 
-        gl.glPushMatrix();
-
-        gl.glEnable(GL10.GL_BLEND);
-        gl.glBlendFunc(GL10.GL_SRC_ALPHA, GL10.GL_ONE_MINUS_SRC_ALPHA);
+        // blending is up to the renderer, opaque tiles may be drawn without
 
         // bind the previously generated texture
-        gl.glBindTexture(GL10.GL_TEXTURE_2D, textures[0]);
+        state.bindTexture(textures[0]);
 
         // Point to our buffers
-        gl.glEnableClientState(GL10.GL_VERTEX_ARRAY);
-        gl.glEnableClientState(GL10.GL_TEXTURE_COORD_ARRAY);
+        state.enableClientState(GL10.GL_VERTEX_ARRAY);
+        state.enableClientState(GL10.GL_TEXTURE_COORD_ARRAY);
 
         // Set the face rotation
-        gl.glFrontFace(GL10.GL_CW);
+        state.frontFace(GL10.GL_CW);
 
         // Point to our vertex buffer
         gl.glVertexPointer(2, GL10.GL_FLOAT, 0, vertexBuffer);
         gl.glTexCoordPointer(2, GL10.GL_FLOAT, 0, textureBuffer);
 
-        //TODO: optimize next calculations
-        float shiftY = (desiredSize - (desiredSize * scale)) * 0.5f ;
-        float shiftX = translate > 0 ? (desiredSize - (desiredSize * scale)) : 0;
-
-        gl.glTranslatef(-desiredSize* 0.5f, -desiredSize * 0.5f, 0); // set image center into 0.0
-        gl.glTranslatef(translate + shiftX, shiftY, 0); // move image
-        gl.glTranslatef(viewportWidth * 0.5f, viewportHeight * 0.5f, 0); // translate the picture to the center
-
-        gl.glScalef(scale, scale, 1); // scale the picture
+        // move and scale the picture
+        gl.glLoadMatrixf(modelMatrix, 0);
 
         // Draw the vertices as triangle strip
         gl.glDrawArrays(GL10.GL_TRIANGLE_STRIP, 0, 4);
 
-        //Disable the client state before leaving
-        gl.glDisableClientState(GL10.GL_VERTEX_ARRAY);
-        gl.glDisableClientState(GL10.GL_TEXTURE_COORD_ARRAY);
-
-        gl.glPopMatrix();
+        return true;
     }
 }
@@ -7,6 +7,7 @@ import android.graphics.Canvas;
 import android.graphics.Paint;
 import android.opengl.GLUtils;
 import com.masterofcode.android.coverflow_library.R;
+import com.masterofcode.android.coverflow_library.renderer.GLStateCache;
 
 import javax.microedition.khronos.opengles.GL10;
 import java.nio.ByteBuffer;
@@ -113,6 +114,14 @@ public class Background extends AbstractImage<Background>{
         textureBuffer.put(texture);
         textureBuffer.position(0);
 
+        if(uploader != null && uploader.isRunning()){
+            // the uploader gives bm to the bitmap pool
+            uploading = true;
+            uploader.upload(this, bm, uploadGeneration);
+            bitmap.recycle();
+            return;
+        }
+
         // generate one texture pointer
         mGL.glGenTextures(1, textures, 0);
         // ...and bind it to our array
@@ -122,38 +131,58 @@ public class Background extends AbstractImage<Background>{
         mGL.glTexParameterf(GL10.GL_TEXTURE_2D, GL10.GL_TEXTURE_MIN_FILTER, GL10.GL_LINEAR);
         mGL.glTexParameterf(GL10.GL_TEXTURE_2D, GL10.GL_TEXTURE_MAG_FILTER, GL10.GL_NEAREST);
 
-        //Different possible texture parameters, e.g. GL10.GL_CLAMP_TO_EDGE
-        mGL.glTexParameterf(GL10.GL_TEXTURE_2D, GL10.GL_TEXTURE_WRAP_S, GL10.GL_REPEAT);
-        mGL.glTexParameterf(GL10.GL_TEXTURE_2D, GL10.GL_TEXTURE_WRAP_T, GL10.GL_REPEAT);
+        // clamped, the screen sized bitmap is rarely a power of two
+        mGL.glTexParameterf(GL10.GL_TEXTURE_2D, GL10.GL_TEXTURE_WRAP_S, GL10.GL_CLAMP_TO_EDGE);
+        mGL.glTexParameterf(GL10.GL_TEXTURE_2D, GL10.GL_TEXTURE_WRAP_T, GL10.GL_CLAMP_TO_EDGE);
 
         // Use Android GLUtils to specify a two-dimensional texture image from our bitmap
         GLUtils.texImage2D(GL10.GL_TEXTURE_2D, 0, bm, 0);
 
+        invalidateBoundTexture();
+
         // Clean up
         bm.recycle();
         bitmap.recycle();
     }
 
+    @Override
+    protected void setUploadedTexture(int texture) {
+        textures[0] = texture;
+    }
+
+    @Override
+    public int getTextureId() {
+        return textures[0];
+    }
+
+    @Override
+    public boolean isReadyToDraw() {
+        return textures[0] != 0 && vertexBuffer != null && textureBuffer != null;
+    }
+
     /**
      * The draw method for the square with the GL context
+     *
+     * @param state the state cache of the renderer, the client states are left enabled
+     * @return true if a draw call was issued
      */
-    public void draw(GL10 gl) {
+    public boolean draw(GL10 gl, GLStateCache state) {
 
         if (textures[0] == 0) {
-            return;
+            return false;
         }
 
         gl.glPushMatrix();
 
         // bind the previously generated texture
-        gl.glBindTexture(GL10.GL_TEXTURE_2D, textures[0]);
+        state.bindTexture(textures[0]);
 
         // Point to our buffers
-        gl.glEnableClientState(GL10.GL_VERTEX_ARRAY);
-        gl.glEnableClientState(GL10.GL_TEXTURE_COORD_ARRAY);
+        state.enableClientState(GL10.GL_VERTEX_ARRAY);
+        state.enableClientState(GL10.GL_TEXTURE_COORD_ARRAY);
 
         // Set the face rotation
-        gl.glFrontFace(GL10.GL_CW);
+        state.frontFace(GL10.GL_CW);
 
         // Point to our vertex buffer
         gl.glVertexPointer(2, GL10.GL_FLOAT, 0, vertexBuffer);
@@ -168,10 +197,8 @@ public class Background extends AbstractImage<Background>{
         // Draw the vertices as triangle strip
         gl.glDrawArrays(GL10.GL_TRIANGLE_STRIP, 0, 4);
 
-        //Disable the client state before leaving
-        gl.glDisableClientState(GL10.GL_VERTEX_ARRAY);
-        gl.glDisableClientState(GL10.GL_TEXTURE_COORD_ARRAY);
-
         gl.glPopMatrix();
+
+        return true;
     }
 }
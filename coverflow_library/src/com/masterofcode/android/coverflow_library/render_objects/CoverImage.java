@@ -5,10 +5,15 @@ package com.masterofcode.android.coverflow_library.render_objects;
 
 import android.app.Activity;
 import android.graphics.Bitmap;
+import android.opengl.ETC1Util;
 import com.masterofcode.android.coverflow_library.R;
 import com.masterofcode.android.coverflow_library.listeners.DataChangedListener;
+import com.masterofcode.android.coverflow_library.renderer.GLStateCache;
 import com.masterofcode.android.coverflow_library.utils.CoverflowBitmapCallback;
 import com.masterofcode.android.coverflow_library.utils.CoverflowQuery;
+import com.masterofcode.android.coverflow_library.utils.DecodeScheduler;
+import com.masterofcode.android.coverflow_library.utils.Etc1Cache;
+import com.masterofcode.android.coverflow_library.utils.TextureFormats;
 
 import javax.microedition.khronos.opengles.GL10;
 
@@ -18,12 +23,130 @@ import javax.microedition.khronos.opengles.GL10;
  */
 public class CoverImage extends AbstractImage<CoverImage> {
 
+    private static final int REDUCE_FACTOR = 4;  // a texture two levels too large is loaded again smaller
+
     private int index;
 
+    private TextureUploadQueue uploadQueue;
+    boolean uploadQueued;
+
+    private DecodeScheduler loadScheduler;
+
+    private Etc1Cache etc1Cache;
+    private ETC1Util.ETC1Texture loadedCompressed;
+
+    private int previewSize;    // 0 loads the full resolution right away
+    private String thumbnailUrl;
+    private int requestedSize;  // the largest size asked for, 0 if none
+    private volatile int loadedSize;     // the size of the pending bitmap or compressed texture
+    private int shownSize;      // the size of the texture, 0 without one
+
+    // the download or decode in progress, started and cancelled on the GL thread, finished on the UI thread
+    private volatile CoverflowBitmapCallback pendingLoad;
+    private volatile int loadGeneration;  // loads started before the last cancel are stale
+
     public CoverImage(Activity activity, CoverflowQuery query){
        super(activity, query);
     }
 
+    /**
+     * Run the loads on the scheduler of the gallery, nearest to the center first.
+     */
+    public CoverImage setLoadScheduler(DecodeScheduler loadScheduler){
+        this.loadScheduler = loadScheduler;
+        return this;
+    }
+
+    /**
+     * Hand the texture upload to the queue instead of uploading as soon as the bitmap is there.
+     */
+    public CoverImage setUploadQueue(TextureUploadQueue uploadQueue){
+        this.uploadQueue = uploadQueue;
+        return this;
+    }
+
+    /**
+     * Keep opaque covers ETC1 compressed in the cache and upload them compressed, null to disable.
+     */
+    public CoverImage setEtc1Cache(Etc1Cache etc1Cache){
+        this.etc1Cache = etc1Cache;
+        return this;
+    }
+
+    /**
+     * Show a small texture first and load the full resolution only when {@link #requestFullResolution()}
+     * is called, 0 to load the full resolution right away.
+     */
+    public CoverImage setPreviewSize(int previewSize){
+        this.previewSize = previewSize;
+        return this;
+    }
+
+    /**
+     * The url of a small version of the cover for the preview, null to decode the preview from the cover.
+     */
+    public CoverImage setThumbnailUrl(String thumbnailUrl){
+        this.thumbnailUrl = thumbnailUrl;
+        return this;
+    }
+
+    /**
+     * Replace the preview with the full resolution texture, the preview is drawn until it is uploaded.
+     */
+    public void requestFullResolution(){
+        requestSize(imageSize);
+    }
+
+    /**
+     * Load the texture at least at the given size, up to the image size. The smaller texture is drawn
+     * until the larger one is uploaded, see {@link #reduceSize(int)} for the way back.
+     */
+    public void requestSize(int size){
+        size = Math.min(size, imageSize);
+        if(size <= requestedSize){
+            return;
+        }
+        requestedSize = size;
+
+        if(needsReload() && !downloadingImage){
+            loadTexture();
+        }
+    }
+
+    /**
+     * Load the texture again at the given size if it is at least two levels larger, for a tile
+     * that moved away from the center. The larger texture is drawn until the smaller one is
+     * uploaded. Nothing happens while a load or an upload is in progress.
+     */
+    public void reduceSize(int size){
+        int target = Math.max(Math.min(size, imageSize), previewSize);
+        if(textures[0] == 0 || target * REDUCE_FACTOR > shownSize
+                || downloadingImage || uploading || uploadQueued){
+            return;
+        }
+
+        requestedSize = target;
+        loadTexture();
+    }
+
+    /**
+     * The size the texture is loaded at.
+     */
+    private int getTargetSize(){
+        if(requestedSize > 0){
+            return Math.max(requestedSize, previewSize);
+        }
+        return previewSize > 0 ? previewSize : imageSize;
+    }
+
+    private boolean needsReload(){
+        return textures[0] != 0 && shownSize != getTargetSize();
+    }
+
+    public int getIndex(){
+        return index;
+    }
+
     public void tryLoadTexture(DataChangedListener dataChangedListener, int index){
         this.dataChangedListener = dataChangedListener;
         this.index = index;
@@ -34,90 +157,210 @@ public class CoverImage extends AbstractImage<CoverImage> {
     private int loadTexture(){
         int result = 0;
 
+        if(uploadQueued || uploading){
+            // waiting for its turn
+            return result;
+        }
+
+        final int size = getTargetSize();
+        String url = size <= previewSize && thumbnailUrl != null ? thumbnailUrl : mUrl;
+
+        if(loadedBitmap != null && textures[0] != 0 && loadedSize != size){
+            // a level that isn't wanted anymore came in after the texture was uploaded
+            dropLoadedBitmap();
+        }
+
+        if(canUseEtc1(size)){
+            ETC1Util.ETC1Texture compressed = etc1Cache.get(CoverflowBitmapCallback.variantKey(url, aspectExact), size);
+            if(compressed != null){
+                // no decode needed, the compressed copy replaces the bitmap
+                dropLoadedBitmap();
+                loadedSize = size;
+
+                if(uploadQueue != null){
+                    loadedCompressed = compressed;
+                    uploadQueue.enqueue(this);
+                    return result;
+                }
+                boolean swap = textures[0] != 0;
+                shownSize = size;
+                return loadCompressedTexture(compressed, swap);
+            }
+        }
+
         Bitmap bm = (loadedBitmap != null && !loadedBitmap.isRecycled())
-                ? loadedBitmap : mQuery.setShowBlackBars(showBlackBars).getCachedImage(mUrl, imageSize);
+                ? loadedBitmap : mQuery.setShowBlackBars(showBlackBars).setFormatPolicy(formatPolicy).setAspectExact(aspectExact).getCachedImage(url, size);
 
         if (bm == null) {
 
             downloadingImage = true;
+            final int generation = ++loadGeneration;
 
             CoverflowBitmapCallback callback = new CoverflowBitmapCallback(mActivity, showBlackBars,  new CoverflowBitmapCallback.ImageLoadCallback(){
                 public void onLoad(final Bitmap bitmap){
+                    if(generation != loadGeneration){
+                        // cancelled while it was on its way, a newer load may run already
+                        CoverflowBitmapCallback.releaseBitmap(bitmap);
+                        return;
+                    }
 
+                    // the size first, the GL thread reads it after the bitmap
+                    loadedSize = size;
+                    loadedBitmap = bitmap;
+                    pendingLoad = null;
                     downloadingImage = false;
 
                     if(dataChangedListener != null){
                         dataChangedListener.imageUpdated(index);
                     }
-
-                    loadedBitmap = bitmap;
                 }
             });
 
-            mQuery.image(mUrl, true, true, imageSize, R.drawable.empty, callback);
+            if(canUseEtc1(size)){
+                // compressed on the loader thread, next time the cover comes from there
+                callback.etc1Cache(etc1Cache);
+            }
+            callback.position(index).scheduler(loadScheduler);
+            pendingLoad = callback;
+
+            mQuery.image(url, true, true, size, R.drawable.empty, callback);
+        } else if(uploadQueue != null){
+            if(bm != loadedBitmap){
+                dropLoadedBitmap();
+                loadedBitmap = bm;
+                loadedSize = size;
+            }
+            uploadQueue.enqueue(this);
         } else {
-            result = loadGLTexture(bm);
+            boolean swap = textures[0] != 0;
+            shownSize = bm != loadedBitmap ? size : loadedSize;
+            result = loadGLTexture(bm, swap);
         }
 
         return result;
     }
 
-	public int getTexture(){
-        if(textures[0] == 0 && !downloadingImage){
-            loadTexture();
+    /**
+     * Compressed textures can't be padded, the texture of the given size must be one the GPU takes
+     * as it is. Aspect exact ones need npot support.
+     */
+    private boolean canUseEtc1(int size){
+        return etc1Cache != null && showBlackBars && (!aspectExact || npotTextures)
+                && (npotTextures || TextureFormats.isPowerOfTwo(size));
+    }
+
+    /**
+     * Called by the upload queue when it is the turn of this cover.
+     *
+     * @return true if the bitmap was uploaded or handed to the uploader
+     */
+    boolean uploadLoadedBitmap(){
+        if(loadedCompressed != null){
+            ETC1Util.ETC1Texture compressed = loadedCompressed;
+            loadedCompressed = null;
+            boolean swap = textures[0] != 0;
+            shownSize = loadedSize;
+            return loadCompressedTexture(compressed, swap) != 0 || uploading;
         }
 
-        return textures[0];
+        if(loadedBitmap == null || loadedBitmap.isRecycled()){
+            dropLoadedBitmap();
+            return false;
+        }
+
+        // a new level is swapped in once it is uploaded, the old one is drawn until then
+        boolean swap = textures[0] != 0;
+        shownSize = loadedSize;
+        return loadGLTexture(loadedBitmap, swap) != 0 || uploading;
     }
 
-	/** The draw method for the square with the GL context */
-	public void draw(GL10 gl, float translate, float scale) {
+    /**
+     * Drop the texture and whatever waits for its upload, called by the {@link TextureManager}.
+     * The cover starts small again when it is drawn the next time.
+     */
+    void evictTexture(){
+        cancelLoad();
+        removeTexture();
+
+        dropLoadedBitmap();
+        loadedCompressed = null;
+        requestedSize = 0;
+        shownSize = 0;
+    }
 
-        if(textures[0] == 0){
-            loadTexture();
+    /**
+     * Cancel the download, the decode and the queued upload of this cover, its texture is kept.
+     * The load starts over when the cover is drawn again.
+     *
+     * @return true if there was work to cancel
+     */
+    public boolean cancelLoad(){
+        boolean cancelled = false;
+
+        CoverflowBitmapCallback load = pendingLoad;
+        if(load != null){
+            loadGeneration++;
+            pendingLoad = null;
+            downloadingImage = false;
+            cancelled = load.cancelLoad();
         }
 
-        if(!isTextureInit){
-            return;
+        if(uploadQueued && uploadQueue != null){
+            uploadQueue.remove(this);
+            if(loadedBitmap != null || loadedCompressed != null){
+                CoverflowBitmapCallback.getLoadStats().addDroppedUpload();
+            }
+            dropLoadedBitmap();
+            loadedCompressed = null;
+            cancelled = true;
         }
 
-        gl.glPushMatrix();
-
-        gl.glEnable(GL10.GL_BLEND);
-        gl.glBlendFunc(GL10.GL_SRC_ALPHA, GL10.GL_ONE_MINUS_SRC_ALPHA);
-
-		// bind the previously generated texture
-		gl.glBindTexture(GL10.GL_TEXTURE_2D, textures[0]);
-		
-		// Point to our buffers
-		gl.glEnableClientState(GL10.GL_VERTEX_ARRAY);
-		gl.glEnableClientState(GL10.GL_TEXTURE_COORD_ARRAY);
-		
-		// Set the face rotation
-		gl.glFrontFace(GL10.GL_CW);
-		
-		// Point to our vertex buffer
-		gl.glVertexPointer(2, GL10.GL_FLOAT, 0, vertexBuffer);
-		gl.glTexCoordPointer(2, GL10.GL_FLOAT, 0, textureBuffer);
+        return cancelled;
+    }
 
+    /**
+     * Give the bitmap that waits for its upload back, so the last holder can pool it.
+     */
+    private void dropLoadedBitmap(){
+        Bitmap bm = loadedBitmap;
+        loadedBitmap = null;
+        CoverflowBitmapCallback.releaseBitmap(bm);
+    }
 
-        //TODO: optimize next calculations
-        float shiftY = (desiredSize - (desiredSize * scale)) * 0.5f ;
-        float shiftX = translate > 0 ? (desiredSize - (desiredSize * scale)) : 0;
+    /**
+     * The size of the data waiting for the upload queue.
+     */
+    int getPendingUploadBytes(){
+        if(loadedCompressed != null){
+            return loadedCompressed.getData().capacity();
+        }
+        if(loadedBitmap != null && !loadedBitmap.isRecycled()){
+            return loadedBitmap.getRowBytes() * loadedBitmap.getHeight();
+        }
+        return 0;
+    }
 
-        gl.glTranslatef(-desiredSize* 0.5f, -desiredSize * 0.5f, 0); // set image center into 0.0
-        gl.glTranslatef(translate + shiftX, shiftY, 0); // move image
-        gl.glTranslatef(viewportWidth * 0.5f, viewportHeight * 0.5f, 0); // translate the picture to the center
+	public int getTexture(){
+        if((textures[0] == 0 || needsReload()) && !downloadingImage){
+            loadTexture();
+        }
 
-        gl.glScalef(scale, scale, 1); // scale the picture
+        return textures[0];
+    }
 
-        // Draw the vertices as triangle strip
-		gl.glDrawArrays(GL10.GL_TRIANGLE_STRIP, 0, 4);
+	/** The draw method for the square with the GL context */
+	public boolean draw(GL10 gl, GLStateCache state, float[] modelMatrix) {
 
-		//Disable the client state before leaving
-		gl.glDisableClientState(GL10.GL_VERTEX_ARRAY);
-		gl.glDisableClientState(GL10.GL_TEXTURE_COORD_ARRAY);
+        if(textures[0] == 0){
+            loadTexture();
+        }
 
-        gl.glPopMatrix();
+        return super.draw(gl, state, modelMatrix);
 	}
+
+    @Override
+    void onAtlasSlotEvicted(){
+        super.onAtlasSlotEvicted();
+        shownSize = 0;
+    }
 }
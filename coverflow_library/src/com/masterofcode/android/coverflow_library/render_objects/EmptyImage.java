@@ -3,6 +3,7 @@ package com.masterofcode.android.coverflow_library.render_objects;
 import android.app.Activity;
 import android.graphics.*;
 import com.masterofcode.android.coverflow_library.R;
+import com.masterofcode.android.coverflow_library.utils.TextureFormats;
 
 public class EmptyImage extends AbstractImage<EmptyImage> {
 
@@ -40,21 +41,33 @@ public class EmptyImage extends AbstractImage<EmptyImage> {
 
         float desiredScale = Math.min(sx, sy);
 
-        Bitmap bitmap = Bitmap.createBitmap(imageSize, imageSize, showBlackBars ? Bitmap.Config.RGB_565 : Bitmap.Config.ARGB_8888);
-        Canvas cv = new Canvas(bitmap);
-
         float left = (imageSize - w * desiredScale) / 2;
         float top = (imageSize - h * desiredScale) / 2;
 
+        boolean transparentMargins = !showBlackBars && (Math.round(left) > 0 || Math.round(top) > 0);
+        Bitmap.Config config = TextureFormats.select(formatPolicy, TextureFormats.analyze(bm), showBlackBars, transparentMargins);
+        boolean luminance = config == Bitmap.Config.ALPHA_8;
+
+        Bitmap bitmap = Bitmap.createBitmap(imageSize, imageSize, luminance ? Bitmap.Config.ARGB_8888 : config);
+        Canvas cv = new Canvas(bitmap);
+        if(luminance){
+            cv.drawColor(Color.BLACK);
+        }
+
         Matrix matrix = new Matrix();
         matrix.postScale(desiredScale, desiredScale);
         matrix.postTranslate(left, top);
 
         Paint paint = new Paint();
         paint.setFilterBitmap(true);
+        paint.setDither(config == Bitmap.Config.RGB_565 || config == Bitmap.Config.ARGB_4444);
 
         cv.drawBitmap(bm, matrix, paint);
 
+        if(luminance){
+            bitmap = TextureFormats.toLuminance(bitmap);
+        }
+
         loadGLTexture(bitmap);
 
         // Clean up
@@ -0,0 +1,145 @@
+package com.masterofcode.android.coverflow_library.render_objects;
+
+import android.app.Activity;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.PorterDuff;
+import android.opengl.GLUtils;
+import com.masterofcode.android.coverflow_library.utils.FrameMetrics;
+import com.masterofcode.android.coverflow_library.utils.FrameStats;
+
+import javax.microedition.khronos.opengles.GL10;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Frame timing drawn over the gallery: a bar per frame interval, red when frames were
+ * dropped, and the percentiles of the rolling {@link FrameStats}.
+ *
+ * The panel is drawn with a Canvas into a bitmap and copied into its texture a few
+ * times per second, its vertices are in screen coordinates like the background.
+ *
+ * @author skynet67
+ */
+public class HudOverlay extends AbstractImage<HudOverlay> {
+
+    private static final int WIDTH = 256;
+    private static final int HEIGHT = 128;
+    private static final int GRAPH_HEIGHT = 48;
+    private static final long GRAPH_MAX_NANOS = 50000000L;
+    private static final long FRAME_NANOS = 16666667L;
+    private static final long UPDATE_NANOS = 250000000L;
+
+    private final Bitmap bitmap = Bitmap.createBitmap(WIDTH, HEIGHT, Bitmap.Config.ARGB_8888);
+    private final Canvas canvas = new Canvas(bitmap);
+    private final Paint paint = new Paint();
+    private final long[] intervals = new long[WIDTH / 2];
+
+    private long lastUpdateNanos;
+
+    public HudOverlay(Activity activity){
+        super(activity, 0);
+
+        paint.setTextSize(12);
+        paint.setAntiAlias(true);
+    }
+
+    /**
+     * Place the panel in the top left corner of the viewport.
+     */
+    public void initBuffers(int width, int height){
+        viewportWidth = width;
+        viewportHeight = height;
+
+        float left = 0;
+        float top = height;
+        float vertices[] = {
+                left, top - HEIGHT,             //Bottom Left
+                left + WIDTH, top - HEIGHT,     //Bottom Right
+                left, top,                      //Top Left
+                left + WIDTH, top,              //Top Right
+        };
+
+        ByteBuffer byteBuffer = ByteBuffer.allocateDirect(vertices.length * 4);
+        byteBuffer.order(ByteOrder.nativeOrder());
+        vertexBuffer = byteBuffer.asFloatBuffer();
+        vertexBuffer.put(vertices);
+        vertexBuffer.position(0);
+
+        byteBuffer = ByteBuffer.allocateDirect(texture.length * 4);
+        byteBuffer.order(ByteOrder.nativeOrder());
+        textureBuffer = byteBuffer.asFloatBuffer();
+        textureBuffer.put(texture);
+        textureBuffer.position(0);
+
+        isTextureInit = true;
+    }
+
+    /**
+     * Redraw the panel if it is due, on the GL thread.
+     */
+    public void update(FrameStats stats, FrameMetrics last, long nowNanos){
+        if(mGL == null || (textures[0] != 0 && nowNanos - lastUpdateNanos < UPDATE_NANOS)){
+            return;
+        }
+        lastUpdateNanos = nowNanos;
+
+        drawPanel(stats, last);
+
+        if(textures[0] == 0){
+            genTexture();
+            GLUtils.texImage2D(GL10.GL_TEXTURE_2D, 0, bitmap, 0);
+        } else {
+            mGL.glBindTexture(GL10.GL_TEXTURE_2D, textures[0]);
+            GLUtils.texSubImage2D(GL10.GL_TEXTURE_2D, 0, 0, 0, bitmap);
+        }
+
+        invalidateBoundTexture();
+    }
+
+    private void drawPanel(FrameStats stats, FrameMetrics last){
+        canvas.drawColor(Color.argb(160, 0, 0, 0), PorterDuff.Mode.SRC);
+
+        // one bar per frame, the line is a 60 Hz frame
+        int count = stats.getIntervals(intervals);
+        for(int i = 0; i < count; i++){
+            long interval = Math.min(intervals[i], GRAPH_MAX_NANOS);
+            float barHeight = (float) interval / GRAPH_MAX_NANOS * GRAPH_HEIGHT;
+
+            paint.setColor(intervals[i] > FrameStats.JANK_NANOS ? Color.RED : Color.GREEN);
+            canvas.drawRect(i * 2, HEIGHT - barHeight, i * 2 + 1, HEIGHT, paint);
+        }
+
+        float frameLine = HEIGHT - (float) FRAME_NANOS / GRAPH_MAX_NANOS * GRAPH_HEIGHT;
+        paint.setColor(Color.YELLOW);
+        canvas.drawLine(0, frameLine, WIDTH, frameLine, paint);
+
+        paint.setColor(Color.WHITE);
+        canvas.drawText("draw   p50 " + millis(stats.getDrawPercentile(50)) + "  p90 " + millis(stats.getDrawPercentile(90))
+                + "  p99 " + millis(stats.getDrawPercentile(99)), 4, 14, paint);
+        canvas.drawText("frame  p50 " + millis(stats.getIntervalPercentile(50)) + "  p90 " + millis(stats.getIntervalPercentile(90))
+                + "  p99 " + millis(stats.getIntervalPercentile(99)), 4, 28, paint);
+        canvas.drawText("janky " + stats.getJankyFrames() + "/" + stats.getFrameCount()
+                + "  input p90 " + millis(stats.getInputLatencyPercentile(90)), 4, 42, paint);
+        canvas.drawText("calls " + last.getDrawCalls() + "  tiles " + last.getTilesDrawn()
+                + "  empty " + last.getPlaceholderTiles() + "  up " + last.getUploads()
+                + " " + (last.getUploadBytes() / 1024) + "k", 4, 56, paint);
+    }
+
+    private static String millis(long nanos){
+        long tenths = nanos / 100000L;
+        return (tenths / 10) + "." + (tenths % 10);
+    }
+
+    /**
+     * Free the bitmap, the overlay can't be used afterwards.
+     */
+    public void release(){
+        if(mGL != null){
+            removeTexture();
+        }
+        bitmap.recycle();
+    }
+}
@@ -0,0 +1,261 @@
+package com.masterofcode.android.coverflow_library.render_objects;
+
+import android.graphics.Bitmap;
+import android.opengl.GLUtils;
+
+import javax.microedition.khronos.opengles.GL10;
+
+/**
+ * Packs equally sized cover bitmaps into a few big textures, so the visible
+ * tiles can share one texture and be drawn by a single call.
+ *
+ * The atlas is split into square pages of <code>pageSize</code> pixels, every page is
+ * split into square cells of <code>cellSize</code>. When all cells are taken the least
+ * recently drawn one is given away and its owner is told to reload.
+ *
+ * @author skynet67
+ */
+public class TextureAtlas {
+
+    private static final int MAX_PAGE_SIZE = 2048;
+
+    private GL10 mGL;
+
+    private final int cellSize;
+    private final int pageSize;
+    private final int cellsPerRow;
+    private final int cellsPerPage;
+    private final int capacity;
+
+    private final boolean opaque;
+
+    private final int[] pages;
+    private final AbstractImage<?>[] owners;
+    private final long[] lastUsed;
+
+    private long frame;
+
+    /**
+     * @param gl GL context the pages are created in
+     * @param cellSize the size of one cell, usually the image size
+     * @param maxTextureSize GL_MAX_TEXTURE_SIZE of the device
+     * @param capacity the number of cells required
+     * @param opaque use RGB_565 pages instead of ARGB_8888
+     */
+    public TextureAtlas(GL10 gl, int cellSize, int maxTextureSize, int capacity, boolean opaque){
+        this.mGL = gl;
+        this.cellSize = cellSize;
+        this.capacity = capacity;
+        this.opaque = opaque;
+
+        int limit = Math.min(MAX_PAGE_SIZE, maxTextureSize > 0 ? maxTextureSize : MAX_PAGE_SIZE);
+        int size = cellSize;
+        while (size * 2 <= limit && (size / cellSize) * (size / cellSize) < capacity) {
+            size <<= 1;
+        }
+
+        pageSize = size;
+        cellsPerRow = pageSize / cellSize;
+        cellsPerPage = cellsPerRow * cellsPerRow;
+
+        pages = new int[(capacity + cellsPerPage - 1) / cellsPerPage];
+        owners = new AbstractImage<?>[capacity];
+        lastUsed = new long[capacity];
+    }
+
+    public int getCellSize() {
+        return cellSize;
+    }
+
+    /**
+     * The GPU memory of one cell.
+     */
+    public int getCellBytes() {
+        return cellSize * cellSize * (opaque ? 2 : 4);
+    }
+
+    /**
+     * The GPU memory of the pages created so far. A page keeps its storage until the atlas is
+     * destroyed, giving a cell back frees nothing.
+     */
+    public long getAllocatedBytes() {
+        int created = 0;
+        for (int page : pages) {
+            if (page != 0) {
+                created++;
+            }
+        }
+        return (long) created * pageSize * pageSize * (opaque ? 2 : 4);
+    }
+
+    /**
+     * True if the pages are RGB_565, every cell is opaque then.
+     */
+    public boolean isOpaque() {
+        return opaque;
+    }
+
+    public int getPageCount() {
+        return pages.length;
+    }
+
+    /**
+     * Must be called once before the tiles of a frame are added.
+     */
+    public void beginFrame(){
+        frame++;
+    }
+
+    /**
+     * Mark the slot as drawn in the current frame, so it won't be evicted while the frame is built.
+     */
+    public void touch(int slot){
+        if(slot >= 0 && slot < capacity){
+            lastUsed[slot] = frame;
+        }
+    }
+
+    /**
+     * Copy the bitmap into a free cell.
+     *
+     * @return the slot index, or -1 if the bitmap doesn't fit or all cells are used by the current frame
+     */
+    public int upload(AbstractImage<?> owner, Bitmap bitmap){
+        if(mGL == null || bitmap == null || bitmap.isRecycled()){
+            return -1;
+        }
+
+        if(bitmap.getWidth() > cellSize || bitmap.getHeight() > cellSize){
+            return -1;
+        }
+
+        int slot = findFreeSlot();
+        if(slot < 0){
+            return -1;
+        }
+
+        AbstractImage<?> previous = owners[slot];
+        if(previous != null && previous != owner){
+            previous.onAtlasSlotEvicted();
+        }
+
+        owners[slot] = owner;
+        lastUsed[slot] = frame;
+
+        int page = slot / cellsPerPage;
+        if(pages[page] == 0){
+            createPage(page);
+        } else {
+            mGL.glBindTexture(GL10.GL_TEXTURE_2D, pages[page]);
+        }
+
+        Bitmap.Config config = opaque ? Bitmap.Config.RGB_565 : Bitmap.Config.ARGB_8888;
+        Bitmap source = bitmap.getConfig() == config ? bitmap : bitmap.copy(config, false);
+
+        int cell = slot % cellsPerPage;
+        GLUtils.texSubImage2D(GL10.GL_TEXTURE_2D, 0, (cell % cellsPerRow) * cellSize, (cell / cellsPerRow) * cellSize, source);
+
+        if(source != bitmap){
+            source.recycle();
+        }
+
+        return slot;
+    }
+
+    /**
+     * Free the slot if it still belongs to the owner.
+     */
+    public void release(int slot, AbstractImage<?> owner){
+        if(slot >= 0 && slot < capacity && owners[slot] == owner){
+            owners[slot] = null;
+            lastUsed[slot] = 0;
+        }
+    }
+
+    public int getTexture(int slot){
+        return pages[slot / cellsPerPage];
+    }
+
+    /**
+     * Fill the texture coordinates of the slot in the same order as {@link AbstractImage#texture}.
+     * Coordinates are inset by half a texel so linear filtering never picks up the neighbouring cell.
+     */
+    public void getTextureCoordinates(int slot, int width, int height, float[] out){
+        int cell = slot % cellsPerPage;
+        float x = (cell % cellsPerRow) * cellSize;
+        float y = (cell / cellsPerRow) * cellSize;
+
+        float left = (x + 0.5f) / pageSize;
+        float right = (x + width - 0.5f) / pageSize;
+        float top = (y + 0.5f) / pageSize;
+        float bottom = (y + height - 0.5f) / pageSize;
+
+        out[0] = left;  out[1] = bottom;    // top left
+        out[2] = right; out[3] = bottom;    // top right
+        out[4] = left;  out[5] = top;       // bottom left
+        out[6] = right; out[7] = top;       // bottom right
+    }
+
+    /**
+     * Delete all pages. The atlas can't be used after this call.
+     */
+    public void destroy(){
+        for(int i = 0; i < pages.length; i++){
+            if(pages[i] != 0 && mGL != null){
+                mGL.glDeleteTextures(1, pages, i);
+            }
+            pages[i] = 0;
+        }
+
+        for(int i = 0; i < capacity; i++){
+            owners[i] = null;
+        }
+
+        mGL = null;
+    }
+
+    /**
+     * Forget the pages without deleting them, they are gone with the context they were created in.
+     * The owners have to forget their slots themselves.
+     */
+    public void abandon(){
+        for(int i = 0; i < pages.length; i++){
+            pages[i] = 0;
+        }
+        destroy();
+    }
+
+    private int findFreeSlot(){
+        int victim = -1;
+        long oldest = frame;
+
+        for(int i = 0; i < capacity; i++){
+            if(owners[i] == null){
+                return i;
+            }
+
+            if(lastUsed[i] < oldest){
+                oldest = lastUsed[i];
+                victim = i;
+            }
+        }
+
+        return victim;
+    }
+
+    private void createPage(int page){
+        mGL.glGenTextures(1, pages, page);
+        mGL.glBindTexture(GL10.GL_TEXTURE_2D, pages[page]);
+
+        mGL.glTexParameterf(GL10.GL_TEXTURE_2D, GL10.GL_TEXTURE_MIN_FILTER, GL10.GL_LINEAR);
+        mGL.glTexParameterf(GL10.GL_TEXTURE_2D, GL10.GL_TEXTURE_MAG_FILTER, GL10.GL_NEAREST);
+        mGL.glTexParameterf(GL10.GL_TEXTURE_2D, GL10.GL_TEXTURE_WRAP_S, GL10.GL_CLAMP_TO_EDGE);
+        mGL.glTexParameterf(GL10.GL_TEXTURE_2D, GL10.GL_TEXTURE_WRAP_T, GL10.GL_CLAMP_TO_EDGE);
+
+        int format = opaque ? GL10.GL_RGB : GL10.GL_RGBA;
+        int type = opaque ? GL10.GL_UNSIGNED_SHORT_5_6_5 : GL10.GL_UNSIGNED_BYTE;
+
+        // allocate the storage only, cells are filled with texSubImage2D
+        mGL.glTexImage2D(GL10.GL_TEXTURE_2D, 0, format, pageSize, pageSize, 0, format, type, null);
+    }
+}
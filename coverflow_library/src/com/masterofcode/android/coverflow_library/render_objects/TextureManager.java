@@ -0,0 +1,235 @@
+package com.masterofcode.android.coverflow_library.render_objects;
+
+import com.masterofcode.android.coverflow_library.renderer.TexturePool;
+
+import javax.microedition.khronos.opengles.GL10;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The covers that hold a texture, limited by the number of tiles and by the bytes of their textures.
+ *
+ * The size of every texture is what was really uploaded: padding, pixel format, mipmap levels
+ * and ETC1 compression included. The pages of the atlas are counted once as a fixed cost, a cover
+ * in an atlas cell adds nothing since giving the cell back frees nothing. The textures kept by the
+ * texture pool are counted too, they get what the covers leave of the budget.
+ *
+ * When the tile limit is exceeded the least recently drawn covers lose their texture. When only
+ * the budget is exceeded just the covers with an own texture are evicted. Covers drawn in the
+ * current frame are never evicted, the budget may be exceeded by them.
+ *
+ * Called on the GL thread, the statistics can be read from any thread.
+ *
+ * @author skynet67
+ */
+public class TextureManager {
+
+    /**
+     * Decides which covers keep their pending loads.
+     */
+    public interface Retention {
+        boolean retains(int position);
+    }
+
+    private static class Entry {
+        final CoverImage image;
+        long frame;
+
+        Entry(CoverImage image){
+            this.image = image;
+        }
+    }
+
+    // access ordered, the least recently drawn first
+    private final LinkedHashMap<Integer, Entry> entries = new LinkedHashMap<Integer, Entry>(16, 0.75f, true);
+
+    private int maxTiles;
+    private long maxBytes;
+
+    private TextureAtlas atlas;
+    private TexturePool texturePool;
+
+    private long frame;
+
+    private volatile long residentBytes;
+    private volatile int residentCount;
+    private volatile int evictedCount;
+    private volatile long evictedBytes;
+
+    /**
+     * @param maxTiles the most covers with a texture
+     * @param maxBytes the most bytes of their textures, 0 for no limit
+     */
+    public TextureManager(int maxTiles, long maxBytes){
+        this.maxTiles = maxTiles;
+        this.maxBytes = maxBytes;
+    }
+
+    public void setMaxTiles(int maxTiles){
+        this.maxTiles = maxTiles;
+    }
+
+    public int getMaxTiles(){
+        return maxTiles;
+    }
+
+    /**
+     * @param maxBytes the most bytes of the textures, 0 for no limit
+     */
+    public void setBudget(long maxBytes){
+        this.maxBytes = maxBytes;
+    }
+
+    public long getBudget(){
+        return maxBytes;
+    }
+
+    /**
+     * The atlas whose pages are counted as a fixed cost, null without one.
+     */
+    public void setAtlas(TextureAtlas atlas){
+        this.atlas = atlas;
+    }
+
+    /**
+     * The pool whose textures are counted and deleted beyond the budget, null without one.
+     */
+    public void setTexturePool(TexturePool texturePool){
+        this.texturePool = texturePool;
+    }
+
+    public void beginFrame(){
+        frame++;
+    }
+
+    /**
+     * The cover at the given position if it is managed, marked as drawn in this frame.
+     */
+    public CoverImage get(int position){
+        Entry entry = entries.get(position);
+        if(entry == null){
+            return null;
+        }
+
+        entry.frame = frame;
+        return entry.image;
+    }
+
+    /**
+     * Manage the cover, it is marked as drawn in this frame.
+     */
+    public void put(int position, CoverImage image){
+        Entry entry = new Entry(image);
+        entry.frame = frame;
+
+        Entry old = entries.put(position, entry);
+        if(old != null && old.image != image){
+            evict(old.image);
+        }
+    }
+
+    /**
+     * Evict the least recently drawn covers until both limits are kept, once per frame after drawing.
+     */
+    public void trim(GL10 gl){
+        long bytes = atlas != null ? atlas.getAllocatedBytes() : 0;
+        for(Entry entry : entries.values()){
+            bytes += getFreeableBytes(entry.image);
+        }
+
+        Iterator<Map.Entry<Integer, Entry>> it = entries.entrySet().iterator();
+        while(it.hasNext()){
+            boolean overTiles = entries.size() > maxTiles;
+            if(!overTiles && (maxBytes <= 0 || bytes <= maxBytes)){
+                break;
+            }
+
+            Entry entry = it.next().getValue();
+            if(entry.frame == frame){
+                // everything after it was drawn in this frame too
+                break;
+            }
+
+            int size = getFreeableBytes(entry.image);
+            if(!overTiles && size == 0){
+                // evicting it wouldn't bring the bytes down
+                continue;
+            }
+
+            it.remove();
+            evict(entry.image);
+            bytes -= size;
+        }
+
+        if(texturePool != null){
+            if(maxBytes > 0){
+                // the evicted textures may have gone to the pool, it keeps what fits
+                texturePool.trim(gl, Math.max(0, maxBytes - bytes));
+            }
+            bytes += texturePool.getBytes();
+        }
+
+        residentBytes = bytes;
+        residentCount = entries.size();
+    }
+
+    private static int getFreeableBytes(CoverImage image){
+        return image.isInAtlas() ? 0 : image.getTextureBytes();
+    }
+
+    /**
+     * Cancel the loads and uploads of the covers the retention lets go, their textures are kept.
+     *
+     * @return the number of covers whose work was cancelled
+     */
+    public int cancelLoads(Retention retention){
+        int cancelled = 0;
+        for(Map.Entry<Integer, Entry> entry : entries.entrySet()){
+            if(!retention.retains(entry.getKey()) && entry.getValue().image.cancelLoad()){
+                cancelled++;
+            }
+        }
+        return cancelled;
+    }
+
+    private void evict(CoverImage image){
+        int size = getFreeableBytes(image);
+        if(size > 0){
+            evictedCount++;
+            evictedBytes += size;
+        }
+        image.evictTexture();
+    }
+
+    /**
+     * Forget all covers without touching their textures, e.g. when the textures are recreated.
+     */
+    public void clear(){
+        entries.clear();
+        residentBytes = 0;
+        residentCount = 0;
+    }
+
+    /**
+     * The bytes of the textures after the last {@link #trim(GL10)}, atlas pages and pooled textures included.
+     */
+    public long getResidentBytes(){
+        return residentBytes;
+    }
+
+    public int getResidentCount(){
+        return residentCount;
+    }
+
+    /**
+     * The number of textures evicted since the manager was created.
+     */
+    public int getEvictedCount(){
+        return evictedCount;
+    }
+
+    public long getEvictedBytes(){
+        return evictedBytes;
+    }
+}
@@ -0,0 +1,142 @@
+package com.masterofcode.android.coverflow_library.render_objects;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Covers waiting for their texture upload. Every frame uploads the ones closest to
+ * the center tile until the budget of the frame is used up, the rest waits for the
+ * next frames and the empty image is drawn in their place meanwhile.
+ *
+ * At least one upload is done per frame, so a single large texture can't stall the queue.
+ * All methods are called on the GL thread, except {@link #getPendingCount()} which can be read from any thread.
+ *
+ * @author skynet67
+ */
+public class TextureUploadQueue {
+
+    private final List<CoverImage> pending = new ArrayList<CoverImage>();
+    private volatile int pendingCount; // the size of pending, published for other threads
+
+    private int maxBytes;
+    private long maxNanos;
+
+    private int lastFrameUploads;
+    private int lastFrameBytes;
+
+    /**
+     * @param maxBytes bytes uploaded per frame, 0 for no limit
+     * @param maxMillis time spent uploading per frame, 0 for no limit
+     */
+    public TextureUploadQueue(int maxBytes, long maxMillis){
+        setBudget(maxBytes, maxMillis);
+    }
+
+    public void setBudget(int maxBytes, long maxMillis){
+        this.maxBytes = maxBytes;
+        this.maxNanos = maxMillis * 1000000L;
+    }
+
+    void enqueue(CoverImage image){
+        if(!image.uploadQueued){
+            image.uploadQueued = true;
+            pending.add(image);
+            pendingCount = pending.size();
+        }
+    }
+
+    /**
+     * Take the cover out of the queue before its upload.
+     */
+    void remove(CoverImage image){
+        if(image.uploadQueued){
+            image.uploadQueued = false;
+            pending.remove(image);
+            pendingCount = pending.size();
+        }
+    }
+
+    /**
+     * Upload the pending textures of this frame, nearest to the center first.
+     *
+     * @param center the offset of the center tile
+     * @param maxDistance covers farther away are dropped, they are queued again once they are drawn
+     * @return true if uploads are left for the next frames
+     */
+    public boolean process(float center, float maxDistance){
+        lastFrameUploads = 0;
+        lastFrameBytes = 0;
+
+        for(int i = pending.size() - 1; i >= 0; i--){
+            CoverImage image = pending.get(i);
+            if(Math.abs(image.getIndex() - center) > maxDistance){
+                image.uploadQueued = false;
+                pending.remove(i);
+            }
+        }
+
+        long start = System.nanoTime();
+
+        while(!pending.isEmpty()){
+            int nearest = 0;
+            float nearestDistance = Math.abs(pending.get(0).getIndex() - center);
+
+            for(int i = 1; i < pending.size(); i++){
+                float distance = Math.abs(pending.get(i).getIndex() - center);
+                if(distance < nearestDistance){
+                    nearest = i;
+                    nearestDistance = distance;
+                }
+            }
+
+            CoverImage image = pending.get(nearest);
+            int bytes = image.getPendingUploadBytes();
+
+            if(lastFrameUploads > 0){
+                if(maxBytes > 0 && lastFrameBytes + bytes > maxBytes){
+                    break;
+                }
+                if(maxNanos > 0 && System.nanoTime() - start >= maxNanos){
+                    break;
+                }
+            }
+
+            pending.remove(nearest);
+            image.uploadQueued = false;
+
+            if(image.uploadLoadedBitmap()){
+                lastFrameUploads++;
+                lastFrameBytes += bytes;
+            }
+        }
+
+        pendingCount = pending.size();
+        return !pending.isEmpty();
+    }
+
+    /**
+     * Forget all pending uploads, e.g. when the textures are recreated.
+     */
+    public void clear(){
+        for(CoverImage image : pending){
+            image.uploadQueued = false;
+        }
+        pending.clear();
+        pendingCount = 0;
+    }
+
+    /**
+     * The covers waiting for their upload, as of the last change of the queue.
+     */
+    public int getPendingCount(){
+        return pendingCount;
+    }
+
+    public int getLastFrameUploads() {
+        return lastFrameUploads;
+    }
+
+    public int getLastFrameBytes() {
+        return lastFrameBytes;
+    }
+}
@@ -0,0 +1,241 @@
+package com.masterofcode.android.coverflow_library.render_objects;
+
+import com.masterofcode.android.coverflow_library.renderer.GLStateCache;
+
+import javax.microedition.khronos.opengles.GL10;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.ShortBuffer;
+
+/**
+ * Collects the quads of all tiles of a frame into one interleaved vertex buffer
+ * (x, y, z, u, v) and draws them with as few calls as possible.
+ *
+ * Tiles keep the order they were added in, a new draw call is only issued when
+ * the texture changes, so with a {@link TextureAtlas} the whole frame is one call.
+ *
+ * @author skynet67
+ */
+public class TileBatch {
+
+    public static final int FLOATS_PER_VERTEX = 5;
+    public static final int VERTICES_PER_QUAD = 4;
+    public static final int INDICES_PER_QUAD = 6;
+    public static final int STRIDE = FLOATS_PER_VERTEX * 4;
+
+    private final int capacity;
+
+    private final float[] vertices;
+    private final FloatBuffer vertexBuffer;
+    private final FloatBuffer textureBuffer;
+    private final ShortBuffer indexBuffer;
+
+    private final int[] runTexture;
+    private final int[] runStart;
+    private final int[] runCount;
+    private int runs;
+
+    private int quads;
+    private int drawCalls;
+
+    public TileBatch(int capacity){
+        this.capacity = capacity;
+
+        vertices = new float[capacity * VERTICES_PER_QUAD * FLOATS_PER_VERTEX];
+
+        ByteBuffer byteBuffer = ByteBuffer.allocateDirect(vertices.length * 4);
+        byteBuffer.order(ByteOrder.nativeOrder());
+        vertexBuffer = byteBuffer.asFloatBuffer();
+
+        // same memory, starts at the texture coordinates of the first vertex
+        vertexBuffer.position(3);
+        textureBuffer = vertexBuffer.slice();
+        vertexBuffer.position(0);
+
+        byteBuffer = ByteBuffer.allocateDirect(capacity * INDICES_PER_QUAD * 2);
+        byteBuffer.order(ByteOrder.nativeOrder());
+        indexBuffer = byteBuffer.asShortBuffer();
+
+        for(int i = 0; i < capacity; i++){
+            short first = (short) (i * VERTICES_PER_QUAD);
+            indexBuffer.put(first);
+            indexBuffer.put((short) (first + 1));
+            indexBuffer.put((short) (first + 2));
+            indexBuffer.put((short) (first + 2));
+            indexBuffer.put((short) (first + 1));
+            indexBuffer.put((short) (first + 3));
+        }
+        indexBuffer.position(0);
+
+        runTexture = new int[capacity];
+        runStart = new int[capacity];
+        runCount = new int[capacity];
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * The number of draw calls issued by the last {@link #end(GL10, GLStateCache)}.
+     */
+    public int getDrawCalls() {
+        return drawCalls;
+    }
+
+    public void begin(){
+        quads = 0;
+        runs = 0;
+        drawCalls = 0;
+    }
+
+    /**
+     * Add the tile with its bottom left corner at left, bottom.
+     *
+     * @param size the scaled size of the tile
+     * @return false if the image has no texture or the batch is full
+     */
+    public boolean add(AbstractImage<?> image, float left, float bottom, float size){
+        return add(image, left, bottom, size, 0f);
+    }
+
+    /**
+     * Add the tile with its bottom left corner at left, bottom.
+     *
+     * @param size the scaled size of the tile
+     * @param depth z of the tile, higher is nearer
+     * @return false if the image has no texture or the batch is full
+     */
+    public boolean add(AbstractImage<?> image, float left, float bottom, float size, float depth){
+        int texture = image.textures[0];
+        if(texture == 0 || !image.isTextureInit || quads == capacity){
+            return false;
+        }
+
+        // the image may be letterboxed inside the tile
+        float[] q = image.quad;
+        float right = left + q[2] * size;
+        float top = bottom + q[3] * size;
+        left += q[0] * size;
+        bottom += q[1] * size;
+
+        float[] uv = image.texture;
+        int i = quads * VERTICES_PER_QUAD * FLOATS_PER_VERTEX;
+
+        i = putVertex(i, left, bottom, depth, uv[0], uv[1]);
+        i = putVertex(i, right, bottom, depth, uv[2], uv[3]);
+        i = putVertex(i, left, top, depth, uv[4], uv[5]);
+        putVertex(i, right, top, depth, uv[6], uv[7]);
+
+        if(runs == 0 || runTexture[runs - 1] != texture){
+            runTexture[runs] = texture;
+            runStart[runs] = quads;
+            runCount[runs] = 0;
+            runs++;
+        }
+        runCount[runs - 1]++;
+
+        if(image.atlas != null){
+            image.atlas.touch(image.atlasSlot);
+        }
+
+        quads++;
+        return true;
+    }
+
+    /**
+     * Copy the collected vertices into the vertex buffer.
+     *
+     * @return false if nothing has to be drawn
+     */
+    public boolean prepare(){
+        if(quads == 0){
+            return false;
+        }
+
+        vertexBuffer.position(0);
+        vertexBuffer.put(vertices, 0, quads * VERTICES_PER_QUAD * FLOATS_PER_VERTEX);
+        vertexBuffer.position(0);
+
+        return true;
+    }
+
+    /**
+     * Positions (x, y, z) of the prepared vertices, {@link #STRIDE} bytes apart.
+     */
+    public FloatBuffer getVertexBuffer() {
+        return vertexBuffer;
+    }
+
+    /**
+     * Texture coordinates of the prepared vertices, {@link #STRIDE} bytes apart.
+     */
+    public FloatBuffer getTextureBuffer() {
+        return textureBuffer;
+    }
+
+    /**
+     * Indices of the given run, two triangles per quad.
+     */
+    public ShortBuffer getIndexBuffer(int run) {
+        indexBuffer.position(runStart[run] * INDICES_PER_QUAD);
+        return indexBuffer;
+    }
+
+    /**
+     * The number of tile runs sharing one texture.
+     */
+    public int getRunCount() {
+        return runs;
+    }
+
+    public int getRunTexture(int run) {
+        return runTexture[run];
+    }
+
+    public int getRunIndexCount(int run) {
+        return runCount[run] * INDICES_PER_QUAD;
+    }
+
+    /**
+     * Count a draw call issued by a renderer that draws the batch itself.
+     */
+    public void addDrawCall() {
+        drawCalls++;
+    }
+
+    /**
+     * Upload the collected vertices and draw them, the model view matrix must be identity.
+     * Blending is left as the renderer set it.
+     */
+    public void end(GL10 gl, GLStateCache state){
+        if(!prepare()){
+            return;
+        }
+
+        state.enableClientState(GL10.GL_VERTEX_ARRAY);
+        state.enableClientState(GL10.GL_TEXTURE_COORD_ARRAY);
+
+        state.frontFace(GL10.GL_CW);
+
+        gl.glVertexPointer(3, GL10.GL_FLOAT, STRIDE, vertexBuffer);
+        gl.glTexCoordPointer(2, GL10.GL_FLOAT, STRIDE, textureBuffer);
+
+        for(int r = 0; r < runs; r++){
+            state.bindTexture(runTexture[r]);
+            gl.glDrawElements(GL10.GL_TRIANGLES, getRunIndexCount(r), GL10.GL_UNSIGNED_SHORT, getIndexBuffer(r));
+            drawCalls++;
+        }
+        indexBuffer.position(0);
+    }
+
+    private int putVertex(int i, float x, float y, float z, float u, float v){
+        vertices[i++] = x;
+        vertices[i++] = y;
+        vertices[i++] = z;
+        vertices[i++] = u;
+        vertices[i++] = v;
+        return i;
+    }
+}
@@ -0,0 +1,60 @@
+package com.masterofcode.android.coverflow_library.renderer;
+
+import com.masterofcode.android.coverflow_library.render_objects.AbstractImage;
+
+/**
+ * The tiles of a frame, kept in the back to front order they were submitted in, so a renderer
+ * can draw the opaque ones front to back before the background and the others back to front after it.
+ *
+ * Every tile gets a depth from its position, a tile submitted later is nearer.
+ *
+ * @author skynet67
+ */
+public class FrameTiles {
+
+    private AbstractImage<?>[] images = new AbstractImage<?>[16];
+    private float[] offsets = new float[16];
+    private int count;
+
+    public void clear(){
+        for(int i = 0; i < count; i++){
+            images[i] = null;
+        }
+        count = 0;
+    }
+
+    public void add(AbstractImage<?> image, float off){
+        if(count == images.length){
+            AbstractImage<?>[] newImages = new AbstractImage<?>[count * 2];
+            System.arraycopy(images, 0, newImages, 0, count);
+            images = newImages;
+
+            float[] newOffsets = new float[count * 2];
+            System.arraycopy(offsets, 0, newOffsets, 0, count);
+            offsets = newOffsets;
+        }
+
+        images[count] = image;
+        offsets[count] = off;
+        count++;
+    }
+
+    public int size(){
+        return count;
+    }
+
+    public AbstractImage<?> getImage(int i){
+        return images[i];
+    }
+
+    public float getOffset(int i){
+        return offsets[i];
+    }
+
+    /**
+     * The z of the tile between 0 and 1, the background stays at 0 behind all tiles.
+     */
+    public float getDepth(int i){
+        return (float) (i + 1) / (count + 1);
+    }
+}
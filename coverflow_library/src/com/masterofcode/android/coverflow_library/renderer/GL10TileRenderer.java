@@ -0,0 +1,247 @@
+package com.masterofcode.android.coverflow_library.renderer;
+
+import android.opengl.GLU;
+import com.masterofcode.android.coverflow_library.render_objects.AbstractImage;
+import com.masterofcode.android.coverflow_library.render_objects.Background;
+import com.masterofcode.android.coverflow_library.render_objects.TileBatch;
+
+import javax.microedition.khronos.opengles.GL10;
+
+/**
+ * Fixed function renderer, used on devices without OpenGL ES 2.0.
+ *
+ * @author skynet67
+ */
+public class GL10TileRenderer implements TileRenderer {
+
+    private GL10 mGL;
+
+    private final GLStateCache mState = new GLStateCache(false);
+
+    private int visibleTiles = 5;
+
+    private TileBatch mBatch;
+
+    private final TileLayout mLayout = new TileLayout();
+    private final float[] placement = new float[3];
+    private final float[] modelMatrix = new float[16];
+    private final float[] identityMatrix = new float[16];
+
+    private int drawCalls;
+
+    private boolean frontToBack;
+    private final FrameTiles mTiles = new FrameTiles();
+    private Background mBackground;
+
+    @Override
+    public int getGLVersion() {
+        return 1;
+    }
+
+    @Override
+    public GLStateCache getStateCache() {
+        return mState;
+    }
+
+    public GL10TileRenderer(){
+        // identity, the layout only writes scale and translation
+        modelMatrix[0] = modelMatrix[5] = modelMatrix[10] = modelMatrix[15] = 1;
+        identityMatrix[0] = identityMatrix[5] = identityMatrix[10] = identityMatrix[15] = 1;
+    }
+
+    @Override
+    public void onSurfaceCreated(GL10 gl) {
+        mGL = gl;
+
+        // a new context, nothing we knew about the state is true anymore
+        mState.setGL(gl);
+        mState.invalidate();
+
+        mState.enable(GL10.GL_TEXTURE_2D);			//Enable Texture Mapping ( NEW )
+        gl.glShadeModel(GL10.GL_SMOOTH); 			//Enable Smooth Shading
+        gl.glClearColor(0.0f, 0.0f, 0.0f, 0.5f); 	//Black Background
+        mState.disable(GL10.GL_DEPTH_TEST); 			//Enables Depth Testing
+
+        //Really Nice Perspective Calculations
+        gl.glHint(GL10.GL_PERSPECTIVE_CORRECTION_HINT, GL10.GL_NICEST);
+    }
+
+    @Override
+    public void onSurfaceChanged(GL10 gl, int width, int height) {
+        mGL = gl;
+
+        gl.glViewport(0, 0, width, height); 	//Reset The Current Viewport
+        gl.glMatrixMode(GL10.GL_PROJECTION); 	//Select The Projection Matrix
+        gl.glLoadIdentity(); 					//Reset The Projection Matrix
+
+        GLU.gluOrtho2D(gl, 0, width, 0, height);
+
+        gl.glMatrixMode(GL10.GL_MODELVIEW);
+        gl.glLoadIdentity();
+    }
+
+    @Override
+    public void setVisibleTiles(int visibleTiles) {
+        this.visibleTiles = visibleTiles;
+    }
+
+    @Override
+    public void setBatch(TileBatch batch) {
+        mBatch = batch;
+    }
+
+    @Override
+    public void setFrontToBack(boolean enabled) {
+        frontToBack = enabled;
+    }
+
+    @Override
+    public void beginFrame() {
+        GL10 gl = mGL;
+
+        mState.beginFrame();
+        // uploads between frames bind textures behind the cache
+        mState.invalidateTexture();
+
+        gl.glMatrixMode(GL10.GL_MODELVIEW);
+        gl.glLoadIdentity();
+
+        // clear Screen and Depth Buffer
+        mState.disable(GL10.GL_DEPTH_TEST);
+        gl.glClearColor(0, 0, 0, 0);
+        if(frontToBack){
+            mState.depthMask(true);
+            gl.glClear(GL10.GL_COLOR_BUFFER_BIT | GL10.GL_DEPTH_BUFFER_BIT);
+        } else {
+            gl.glClear(GL10.GL_COLOR_BUFFER_BIT);
+        }
+
+        mState.enable(GL10.GL_BLEND);
+        mState.blendFunc(GL10.GL_SRC_ALPHA, GL10.GL_ONE_MINUS_SRC_ALPHA);
+
+        drawCalls = 0;
+        mTiles.clear();
+        mBackground = null;
+
+        if(mBatch != null){
+            mBatch.begin();
+        }
+    }
+
+    @Override
+    public void drawBackground(Background background) {
+        if(frontToBack){
+            // drawn after the opaque tiles
+            mBackground = background;
+            return;
+        }
+
+        if(background.draw(mGL, mState)){
+            drawCalls++;
+        }
+    }
+
+    @Override
+    public void drawTile(AbstractImage<?> image, float off) {
+        if(frontToBack){
+            mTiles.add(image, off);
+            return;
+        }
+
+        placeTile(image, off, 0f);
+    }
+
+    @Override
+    public void endFrame() {
+        if(frontToBack){
+            drawFrontToBack();
+            return;
+        }
+
+        flushBatch();
+    }
+
+    @Override
+    public void drawOverlay(AbstractImage<?> overlay) {
+        mState.disable(GL10.GL_DEPTH_TEST);
+        mState.enable(GL10.GL_BLEND);
+        mState.blendFunc(GL10.GL_SRC_ALPHA, GL10.GL_ONE_MINUS_SRC_ALPHA);
+
+        if(overlay.draw(mGL, mState, identityMatrix)){
+            drawCalls++;
+        }
+    }
+
+    private void drawFrontToBack(){
+        // opaque tiles nearest first, the depth test skips every pixel already covered
+        mState.disable(GL10.GL_BLEND);
+        mState.enable(GL10.GL_DEPTH_TEST);
+        mState.depthMask(true);
+
+        for(int i = mTiles.size() - 1; i >= 0; i--){
+            AbstractImage<?> image = mTiles.getImage(i);
+            if(image.isOpaque()){
+                placeTile(image, mTiles.getOffset(i), mTiles.getDepth(i));
+            }
+        }
+        flushBatch();
+
+        // behind all tiles, only the uncovered part is drawn
+        mState.depthMask(false);
+        if(mBackground != null){
+            mGL.glLoadIdentity();
+            if(mBackground.draw(mGL, mState)){
+                drawCalls++;
+            }
+        }
+
+        // the rest back to front over both
+        mState.enable(GL10.GL_BLEND);
+        mState.blendFunc(GL10.GL_SRC_ALPHA, GL10.GL_ONE_MINUS_SRC_ALPHA);
+
+        for(int i = 0; i < mTiles.size(); i++){
+            AbstractImage<?> image = mTiles.getImage(i);
+            if(!image.isOpaque()){
+                placeTile(image, mTiles.getOffset(i), mTiles.getDepth(i));
+            }
+        }
+        flushBatch();
+
+        mState.disable(GL10.GL_DEPTH_TEST);
+        mState.depthMask(true);
+    }
+
+    private void placeTile(AbstractImage<?> image, float off, float depth){
+        mLayout.update(image.getViewportWidth(), image.getViewportHeight(), visibleTiles, image.getDesiredSize());
+
+        if(mBatch != null){
+            mLayout.getPlacement(off, placement);
+            if(mBatch.add(image, placement[0], placement[1], placement[2], depth)){
+                return;
+            }
+        }
+
+        // not batched, or no room in the batch: draw it with a call of its own
+        mLayout.getMatrix(off, placement, modelMatrix);
+        modelMatrix[14] = depth;
+        if(image.draw(mGL, mState, modelMatrix)){
+            drawCalls++;
+        }
+    }
+
+    private void flushBatch(){
+        if(mBatch != null){
+            // the single tiles left their matrix behind, the batch is in screen coordinates
+            mGL.glLoadIdentity();
+
+            mBatch.end(mGL, mState);
+            drawCalls += mBatch.getDrawCalls();
+            mBatch.begin();
+        }
+    }
+
+    @Override
+    public int getDrawCallCount() {
+        return drawCalls;
+    }
+}
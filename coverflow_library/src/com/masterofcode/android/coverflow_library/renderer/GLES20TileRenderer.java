@@ -0,0 +1,420 @@
+package com.masterofcode.android.coverflow_library.renderer;
+
+import android.opengl.GLES20;
+import android.opengl.Matrix;
+import com.masterofcode.android.coverflow_library.render_objects.AbstractImage;
+import com.masterofcode.android.coverflow_library.render_objects.Background;
+import com.masterofcode.android.coverflow_library.render_objects.TileBatch;
+
+import javax.microedition.khronos.opengles.GL10;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+
+/**
+ * OpenGL ES 2.0 renderer. The unit quad lives in a vertex buffer object that is
+ * uploaded once, every tile is placed by a single uniform taken from the {@link TileLayout}.
+ *
+ * Requires API level 9 for glVertexAttribPointer with buffer offsets.
+ *
+ * @author skynet67
+ */
+public class GLES20TileRenderer implements TileRenderer {
+
+    /**
+     * Places the unit quad, the placement comes from {@link TileLayout#getPlacement(float, float[])}.
+     */
+    private static final String TILE_VERTEX_SHADER =
+            "uniform mat4 uProjection;\n" +
+            "uniform vec3 uPlacement;\n" + // left, bottom, size of the scaled tile
+            "uniform vec4 uTexRect;\n" +   // left, top, right, bottom texture coordinates
+            "uniform vec4 uQuad;\n" +      // left, bottom, right, top of the image in the tile
+            "uniform float uDepth;\n" +
+            "attribute vec2 aPosition;\n" +
+            "attribute vec2 aTexCoord;\n" +
+            "varying vec2 vTexCoord;\n" +
+            "void main() {\n" +
+            "    vTexCoord = mix(uTexRect.xy, uTexRect.zw, aTexCoord);\n" +
+            "    gl_Position = uProjection * vec4(uPlacement.xy + mix(uQuad.xy, uQuad.zw, aPosition) * uPlacement.z, uDepth, 1.0);\n" +
+            "}\n";
+
+    /**
+     * Vertices already in screen coordinates, used for the background and batches.
+     * The background only has x and y, its z stays 0.
+     */
+    private static final String QUAD_VERTEX_SHADER =
+            "uniform mat4 uProjection;\n" +
+            "attribute vec3 aPosition;\n" +
+            "attribute vec2 aTexCoord;\n" +
+            "varying vec2 vTexCoord;\n" +
+            "void main() {\n" +
+            "    vTexCoord = aTexCoord;\n" +
+            "    gl_Position = uProjection * vec4(aPosition, 1.0);\n" +
+            "}\n";
+
+    private static final String FRAGMENT_SHADER =
+            "precision mediump float;\n" +
+            "uniform sampler2D uTexture;\n" +
+            "varying vec2 vTexCoord;\n" +
+            "void main() {\n" +
+            "    gl_FragColor = texture2D(uTexture, vTexCoord);\n" +
+            "}\n";
+
+    private static final float QUAD[] = {
+            // x, y, u, v
+            0f, 0f, 0f, 1f,     // bottom left
+            1f, 0f, 1f, 1f,     // bottom right
+            0f, 1f, 0f, 0f,     // top left
+            1f, 1f, 1f, 0f,     // top right
+    };
+
+    private static final int STRIDE = 4 * 4;
+
+    private final float[] projection = new float[16];
+
+    private int tileProgram;
+    private int tilePosition;
+    private int tileTexCoord;
+    private int tileProjection;
+    private int tilePlacement;
+    private int tileTexRect;
+    private int tileQuad;
+    private int tileDepth;
+
+    private int quadProgram;
+    private int quadPosition;
+    private int quadTexCoord;
+    private int quadProjection;
+
+    private final int[] quadBuffer = new int[1];
+
+    private final GLStateCache mState = new GLStateCache(true);
+
+    private int visibleTiles = 5;
+    private boolean uniformsDirty;
+
+    private TileBatch mBatch;
+
+    private final TileLayout mLayout = new TileLayout();
+    private final float[] placement = new float[3];
+
+    private int drawCalls;
+
+    private boolean frontToBack;
+    private final FrameTiles mTiles = new FrameTiles();
+    private Background mBackground;
+
+    @Override
+    public int getGLVersion() {
+        return 2;
+    }
+
+    @Override
+    public GLStateCache getStateCache() {
+        return mState;
+    }
+
+    @Override
+    public void onSurfaceCreated(GL10 gl) {
+        // a new context, everything created before is gone
+        mState.setGL(gl);
+        mState.invalidate();
+
+        tileProgram = createProgram(TILE_VERTEX_SHADER, FRAGMENT_SHADER);
+        tilePosition = GLES20.glGetAttribLocation(tileProgram, "aPosition");
+        tileTexCoord = GLES20.glGetAttribLocation(tileProgram, "aTexCoord");
+        tileProjection = GLES20.glGetUniformLocation(tileProgram, "uProjection");
+        tilePlacement = GLES20.glGetUniformLocation(tileProgram, "uPlacement");
+        tileTexRect = GLES20.glGetUniformLocation(tileProgram, "uTexRect");
+        tileQuad = GLES20.glGetUniformLocation(tileProgram, "uQuad");
+        tileDepth = GLES20.glGetUniformLocation(tileProgram, "uDepth");
+
+        quadProgram = createProgram(QUAD_VERTEX_SHADER, FRAGMENT_SHADER);
+        quadPosition = GLES20.glGetAttribLocation(quadProgram, "aPosition");
+        quadTexCoord = GLES20.glGetAttribLocation(quadProgram, "aTexCoord");
+        quadProjection = GLES20.glGetUniformLocation(quadProgram, "uProjection");
+
+        ByteBuffer byteBuffer = ByteBuffer.allocateDirect(QUAD.length * 4);
+        byteBuffer.order(ByteOrder.nativeOrder());
+        FloatBuffer data = byteBuffer.asFloatBuffer();
+        data.put(QUAD);
+        data.position(0);
+
+        GLES20.glGenBuffers(1, quadBuffer, 0);
+        GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, quadBuffer[0]);
+        GLES20.glBufferData(GLES20.GL_ARRAY_BUFFER, QUAD.length * 4, data, GLES20.GL_STATIC_DRAW);
+        GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, 0);
+
+        mState.disable(GLES20.GL_DEPTH_TEST);
+        GLES20.glClearColor(0.0f, 0.0f, 0.0f, 0.5f);
+
+        uniformsDirty = true;
+    }
+
+    @Override
+    public void onSurfaceChanged(GL10 gl, int width, int height) {
+        GLES20.glViewport(0, 0, width, height);
+        Matrix.orthoM(projection, 0, 0, width, 0, height, -1, 1);
+
+        uniformsDirty = true;
+    }
+
+    @Override
+    public void setVisibleTiles(int visibleTiles) {
+        this.visibleTiles = visibleTiles;
+    }
+
+    @Override
+    public void setBatch(TileBatch batch) {
+        mBatch = batch;
+    }
+
+    @Override
+    public void beginFrame() {
+        mState.beginFrame();
+        // uploads between frames bind textures behind the cache
+        mState.invalidateTexture();
+
+        if(uniformsDirty){
+            useTileProgram();
+            GLES20.glUniformMatrix4fv(tileProjection, 1, false, projection, 0);
+
+            useQuadProgram();
+            GLES20.glUniformMatrix4fv(quadProjection, 1, false, projection, 0);
+
+            uniformsDirty = false;
+        }
+
+        GLES20.glClearColor(0, 0, 0, 0);
+        if(frontToBack){
+            mState.depthMask(true);
+            GLES20.glClear(GLES20.GL_COLOR_BUFFER_BIT | GLES20.GL_DEPTH_BUFFER_BIT);
+        } else {
+            GLES20.glClear(GLES20.GL_COLOR_BUFFER_BIT);
+        }
+
+        mState.enable(GLES20.GL_BLEND);
+        mState.blendFunc(GLES20.GL_SRC_ALPHA, GLES20.GL_ONE_MINUS_SRC_ALPHA);
+
+        drawCalls = 0;
+        mTiles.clear();
+        mBackground = null;
+
+        if(mBatch != null){
+            mBatch.begin();
+        }
+    }
+
+    @Override
+    public void setFrontToBack(boolean enabled) {
+        frontToBack = enabled;
+    }
+
+    @Override
+    public void drawBackground(Background background) {
+        if(frontToBack){
+            // drawn after the opaque tiles
+            mBackground = background;
+            return;
+        }
+
+        drawScreenQuad(background);
+    }
+
+    /**
+     * Draw an image whose vertices are already in screen coordinates.
+     */
+    private void drawScreenQuad(AbstractImage<?> image) {
+        if(!image.isReadyToDraw()){
+            return;
+        }
+
+        useQuadProgram();
+
+        GLES20.glVertexAttribPointer(quadPosition, 2, GLES20.GL_FLOAT, false, 0, image.getVertexBuffer());
+        GLES20.glVertexAttribPointer(quadTexCoord, 2, GLES20.GL_FLOAT, false, 0, image.getTextureBuffer());
+
+        mState.bindTexture(image.getTextureId());
+        GLES20.glDrawArrays(GLES20.GL_TRIANGLE_STRIP, 0, 4);
+        drawCalls++;
+    }
+
+    @Override
+    public void drawTile(AbstractImage<?> image, float off) {
+        if(frontToBack){
+            mTiles.add(image, off);
+            return;
+        }
+
+        placeTile(image, off, 0f);
+    }
+
+    private void placeTile(AbstractImage<?> image, float off, float depth) {
+        mLayout.update(image.getViewportWidth(), image.getViewportHeight(), visibleTiles, image.getDesiredSize());
+        mLayout.getPlacement(off, placement);
+
+        if(mBatch != null && mBatch.add(image, placement[0], placement[1], placement[2], depth)){
+            return;
+        }
+
+        if(!image.isReadyToDraw()){
+            return;
+        }
+
+        useTileProgram();
+
+        float[] uv = image.getTextureCoordinates();
+        GLES20.glUniform4f(tileTexRect, uv[4], uv[5], uv[2], uv[3]);
+        GLES20.glUniform3f(tilePlacement, placement[0], placement[1], placement[2]);
+        float[] quad = image.getQuad();
+        GLES20.glUniform4f(tileQuad, quad[0], quad[1], quad[2], quad[3]);
+        GLES20.glUniform1f(tileDepth, depth);
+
+        mState.bindTexture(image.getTextureId());
+        GLES20.glDrawArrays(GLES20.GL_TRIANGLE_STRIP, 0, 4);
+        drawCalls++;
+    }
+
+    @Override
+    public void endFrame() {
+        if(frontToBack){
+            drawFrontToBack();
+            return;
+        }
+
+        flushBatch();
+    }
+
+    @Override
+    public void drawOverlay(AbstractImage<?> overlay) {
+        mState.disable(GLES20.GL_DEPTH_TEST);
+        mState.enable(GLES20.GL_BLEND);
+        mState.blendFunc(GLES20.GL_SRC_ALPHA, GLES20.GL_ONE_MINUS_SRC_ALPHA);
+
+        drawScreenQuad(overlay);
+    }
+
+    private void drawFrontToBack(){
+        // opaque tiles nearest first, the depth test skips every pixel already covered
+        mState.disable(GLES20.GL_BLEND);
+        mState.enable(GLES20.GL_DEPTH_TEST);
+        mState.depthMask(true);
+
+        for(int i = mTiles.size() - 1; i >= 0; i--){
+            AbstractImage<?> image = mTiles.getImage(i);
+            if(image.isOpaque()){
+                placeTile(image, mTiles.getOffset(i), mTiles.getDepth(i));
+            }
+        }
+        flushBatch();
+
+        // behind all tiles, only the uncovered part is drawn
+        mState.depthMask(false);
+        if(mBackground != null){
+            drawScreenQuad(mBackground);
+        }
+
+        // the rest back to front over both
+        mState.enable(GLES20.GL_BLEND);
+        mState.blendFunc(GLES20.GL_SRC_ALPHA, GLES20.GL_ONE_MINUS_SRC_ALPHA);
+
+        for(int i = 0; i < mTiles.size(); i++){
+            AbstractImage<?> image = mTiles.getImage(i);
+            if(!image.isOpaque()){
+                placeTile(image, mTiles.getOffset(i), mTiles.getDepth(i));
+            }
+        }
+        flushBatch();
+
+        mState.disable(GLES20.GL_DEPTH_TEST);
+        mState.depthMask(true);
+    }
+
+    private void flushBatch() {
+        if(mBatch == null || !mBatch.prepare()){
+            return;
+        }
+
+        useQuadProgram();
+
+        GLES20.glVertexAttribPointer(quadPosition, 3, GLES20.GL_FLOAT, false, TileBatch.STRIDE, mBatch.getVertexBuffer());
+        GLES20.glVertexAttribPointer(quadTexCoord, 2, GLES20.GL_FLOAT, false, TileBatch.STRIDE, mBatch.getTextureBuffer());
+
+        for(int r = 0; r < mBatch.getRunCount(); r++){
+            mState.bindTexture(mBatch.getRunTexture(r));
+            GLES20.glDrawElements(GLES20.GL_TRIANGLES, mBatch.getRunIndexCount(r), GLES20.GL_UNSIGNED_SHORT, mBatch.getIndexBuffer(r));
+            mBatch.addDrawCall();
+        }
+
+        drawCalls += mBatch.getDrawCalls();
+        mBatch.begin();
+    }
+
+    @Override
+    public int getDrawCallCount() {
+        return drawCalls;
+    }
+
+    private void useTileProgram(){
+        if(!mState.useProgram(tileProgram)){
+            return;
+        }
+
+        GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, quadBuffer[0]);
+        GLES20.glEnableVertexAttribArray(tilePosition);
+        GLES20.glEnableVertexAttribArray(tileTexCoord);
+        GLES20.glVertexAttribPointer(tilePosition, 2, GLES20.GL_FLOAT, false, STRIDE, 0);
+        GLES20.glVertexAttribPointer(tileTexCoord, 2, GLES20.GL_FLOAT, false, STRIDE, 2 * 4);
+    }
+
+    private void useQuadProgram(){
+        if(!mState.useProgram(quadProgram)){
+            return;
+        }
+
+        // client side arrays, the vertex buffer object must not be bound
+        GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, 0);
+        GLES20.glEnableVertexAttribArray(quadPosition);
+        GLES20.glEnableVertexAttribArray(quadTexCoord);
+    }
+
+    private static int createProgram(String vertexSource, String fragmentSource){
+        int vertexShader = compileShader(GLES20.GL_VERTEX_SHADER, vertexSource);
+        int fragmentShader = compileShader(GLES20.GL_FRAGMENT_SHADER, fragmentSource);
+
+        int program = GLES20.glCreateProgram();
+        GLES20.glAttachShader(program, vertexShader);
+        GLES20.glAttachShader(program, fragmentShader);
+        GLES20.glLinkProgram(program);
+
+        // the program keeps them alive
+        GLES20.glDeleteShader(vertexShader);
+        GLES20.glDeleteShader(fragmentShader);
+
+        int[] status = new int[1];
+        GLES20.glGetProgramiv(program, GLES20.GL_LINK_STATUS, status, 0);
+        if(status[0] == 0){
+            String log = GLES20.glGetProgramInfoLog(program);
+            GLES20.glDeleteProgram(program);
+            throw new IllegalStateException("Could not link program: " + log);
+        }
+
+        return program;
+    }
+
+    private static int compileShader(int type, String source){
+        int shader = GLES20.glCreateShader(type);
+        GLES20.glShaderSource(shader, source);
+        GLES20.glCompileShader(shader);
+
+        int[] status = new int[1];
+        GLES20.glGetShaderiv(shader, GLES20.GL_COMPILE_STATUS, status, 0);
+        if(status[0] == 0){
+            String log = GLES20.glGetShaderInfoLog(shader);
+            GLES20.glDeleteShader(shader);
+            throw new IllegalStateException("Could not compile shader: " + log);
+        }
+
+        return shader;
+    }
+}
@@ -0,0 +1,284 @@
+package com.masterofcode.android.coverflow_library.renderer;
+
+import android.opengl.GLES20;
+
+import javax.microedition.khronos.opengles.GL10;
+
+/**
+ * Remembers the GL state set through it and only calls GL when the state really changes.
+ * Counts issued and suppressed calls, per frame and in total.
+ *
+ * The state is unknown after {@link #invalidate()}, the next call of every kind always goes to GL.
+ * Anything that changes the state without the cache must invalidate it.
+ *
+ * @author skynet67
+ */
+public class GLStateCache {
+
+    private static final int UNKNOWN = -1;
+
+    // capabilities and client states we track
+    private static final int BLEND = 0;
+    private static final int DEPTH_TEST = 1;
+    private static final int TEXTURE_2D = 2;
+    private static final int VERTEX_ARRAY = 3;
+    private static final int TEXTURE_COORD_ARRAY = 4;
+    private static final int STATES = 5;
+
+    private final boolean gles20;
+
+    private GL10 mGL;
+
+    private final int[] enabled = new int[STATES];
+    private int blendSrc;
+    private int blendDst;
+    private int frontFace;
+    private int depthMask;
+    private int boundTexture;
+    private int program;
+
+    private int issued;
+    private int suppressed;
+    private int lastFrameIssued;
+    private int lastFrameSuppressed;
+    private long totalIssued;
+    private long totalSuppressed;
+
+    /**
+     * @param gles20 issue the calls through GLES20 instead of the GL10 object
+     */
+    public GLStateCache(boolean gles20){
+        this.gles20 = gles20;
+        invalidate();
+    }
+
+    public void setGL(GL10 gl){
+        this.mGL = gl;
+    }
+
+    /**
+     * Forget everything, e.g. after the context was recreated.
+     */
+    public void invalidate(){
+        for(int i = 0; i < STATES; i++){
+            enabled[i] = UNKNOWN;
+        }
+        blendSrc = UNKNOWN;
+        blendDst = UNKNOWN;
+        frontFace = UNKNOWN;
+        depthMask = UNKNOWN;
+        boundTexture = UNKNOWN;
+        program = UNKNOWN;
+    }
+
+    /**
+     * Start counting a new frame.
+     */
+    public void beginFrame(){
+        lastFrameIssued = issued;
+        lastFrameSuppressed = suppressed;
+        totalIssued += issued;
+        totalSuppressed += suppressed;
+        issued = 0;
+        suppressed = 0;
+    }
+
+    public void setEnabled(int capability, boolean enable){
+        int index = indexOf(capability);
+        if(index < 0){
+            // not tracked, always pass it on
+            issued++;
+            callEnable(capability, enable);
+            return;
+        }
+
+        if(!changed(enabled, index, enable ? 1 : 0)){
+            return;
+        }
+
+        if(index == VERTEX_ARRAY || index == TEXTURE_COORD_ARRAY){
+            if(enable){
+                mGL.glEnableClientState(capability);
+            } else {
+                mGL.glDisableClientState(capability);
+            }
+        } else {
+            callEnable(capability, enable);
+        }
+    }
+
+    public void enable(int capability){
+        setEnabled(capability, true);
+    }
+
+    public void disable(int capability){
+        setEnabled(capability, false);
+    }
+
+    /**
+     * Client states only exist in OpenGL ES 1.x.
+     */
+    public void enableClientState(int array){
+        setEnabled(array, true);
+    }
+
+    public void disableClientState(int array){
+        setEnabled(array, false);
+    }
+
+    public void blendFunc(int src, int dst){
+        if(blendSrc == src && blendDst == dst){
+            suppressed++;
+            return;
+        }
+
+        blendSrc = src;
+        blendDst = dst;
+        issued++;
+
+        if(gles20){
+            GLES20.glBlendFunc(src, dst);
+        } else {
+            mGL.glBlendFunc(src, dst);
+        }
+    }
+
+    public void frontFace(int mode){
+        if(frontFace == mode){
+            suppressed++;
+            return;
+        }
+
+        frontFace = mode;
+        issued++;
+
+        if(gles20){
+            GLES20.glFrontFace(mode);
+        } else {
+            mGL.glFrontFace(mode);
+        }
+    }
+
+    public void depthMask(boolean write){
+        int value = write ? 1 : 0;
+        if(depthMask == value){
+            suppressed++;
+            return;
+        }
+
+        depthMask = value;
+        issued++;
+
+        if(gles20){
+            GLES20.glDepthMask(write);
+        } else {
+            mGL.glDepthMask(write);
+        }
+    }
+
+    public void bindTexture(int texture){
+        if(boundTexture == texture){
+            suppressed++;
+            return;
+        }
+
+        boundTexture = texture;
+        issued++;
+
+        if(gles20){
+            GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, texture);
+        } else {
+            mGL.glBindTexture(GL10.GL_TEXTURE_2D, texture);
+        }
+    }
+
+    /**
+     * Tell the cache a texture was bound or deleted behind its back, e.g. by an upload.
+     */
+    public void invalidateTexture(){
+        boundTexture = UNKNOWN;
+    }
+
+    /**
+     * OpenGL ES 2.0 only.
+     *
+     * @return true if the program changed
+     */
+    public boolean useProgram(int program){
+        if(this.program == program){
+            suppressed++;
+            return false;
+        }
+
+        this.program = program;
+        issued++;
+
+        GLES20.glUseProgram(program);
+        return true;
+    }
+
+    /**
+     * Calls issued in the last complete frame.
+     */
+    public int getLastFrameIssuedCalls() {
+        return lastFrameIssued;
+    }
+
+    /**
+     * Calls suppressed in the last complete frame.
+     */
+    public int getLastFrameSuppressedCalls() {
+        return lastFrameSuppressed;
+    }
+
+    public long getTotalIssuedCalls() {
+        return totalIssued + issued;
+    }
+
+    public long getTotalSuppressedCalls() {
+        return totalSuppressed + suppressed;
+    }
+
+    private boolean changed(int[] states, int index, int value){
+        if(states[index] == value){
+            suppressed++;
+            return false;
+        }
+
+        states[index] = value;
+        issued++;
+        return true;
+    }
+
+    private void callEnable(int capability, boolean enable){
+        if(gles20){
+            if(enable){
+                GLES20.glEnable(capability);
+            } else {
+                GLES20.glDisable(capability);
+            }
+        } else {
+            if(enable){
+                mGL.glEnable(capability);
+            } else {
+                mGL.glDisable(capability);
+            }
+        }
+    }
+
+    private static int indexOf(int capability){
+        switch (capability){
+            case GL10.GL_BLEND:
+                return BLEND;
+            case GL10.GL_DEPTH_TEST:
+                return DEPTH_TEST;
+            case GL10.GL_TEXTURE_2D:
+                return TEXTURE_2D;
+            case GL10.GL_VERTEX_ARRAY:
+                return VERTEX_ARRAY;
+            case GL10.GL_TEXTURE_COORD_ARRAY:
+                return TEXTURE_COORD_ARRAY;
+        }
+        return -1;
+    }
+}
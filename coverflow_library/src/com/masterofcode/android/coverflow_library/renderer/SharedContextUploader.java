@@ -0,0 +1,355 @@
+package com.masterofcode.android.coverflow_library.renderer;
+
+import android.graphics.Bitmap;
+import android.opengl.ETC1Util;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Process;
+
+import com.masterofcode.android.coverflow_library.utils.CoverflowBitmapCallback;
+import com.masterofcode.android.coverflow_library.utils.TextureFormats;
+
+import javax.microedition.khronos.egl.EGL10;
+import javax.microedition.khronos.egl.EGLConfig;
+import javax.microedition.khronos.egl.EGLContext;
+import javax.microedition.khronos.egl.EGLDisplay;
+import javax.microedition.khronos.egl.EGLSurface;
+import javax.microedition.khronos.opengles.GL10;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Uploads bitmaps into textures on a thread of its own, with a second EGL context that
+ * shares its objects with the context of the view and draws into a 1x1 pbuffer.
+ *
+ * A texture is finished with glFinish on the upload thread before its name is handed back,
+ * so the GL thread can bind it right away. Finished uploads are delivered on the GL thread
+ * by {@link #drain()}.
+ *
+ * @author skynet67
+ */
+public class SharedContextUploader {
+
+    private static final int EGL_CONTEXT_CLIENT_VERSION = 0x3098;
+    private static final int EGL_OPENGL_ES_BIT = 0x0001;
+    private static final int EGL_OPENGL_ES2_BIT = 0x0004;
+
+    /**
+     * Receives the uploaded texture on the GL thread.
+     */
+    public interface Target {
+        /**
+         * @param texture the name of the new texture, owned by the target from now on
+         * @param tag the tag given to {@link #upload(Target, Bitmap, int)}
+         */
+        public void onTextureUploaded(int texture, int tag);
+    }
+
+    private static class Result {
+        final Target target;
+        final int texture;
+        final int tag;
+
+        Result(Target target, int texture, int tag){
+            this.target = target;
+            this.texture = texture;
+            this.tag = tag;
+        }
+    }
+
+    private final EGL10 mEgl;
+    private final EGLDisplay mDisplay;
+    private final EGLConfig mConfig;
+    private final EGLContext mSharedContext;
+    private final int mGLVersion;
+    private final Runnable mOnUploaded;
+
+    private HandlerThread mThread;
+    private Handler mHandler;
+
+    // owned by the upload thread
+    private EGLContext mContext;
+    private EGLSurface mSurface;
+    private GL10 mGL;
+
+    private volatile boolean running;
+    private volatile TexturePool mTexturePool;
+
+    private final ConcurrentLinkedQueue<Result> finished = new ConcurrentLinkedQueue<Result>();
+
+    /**
+     * @param onUploaded called on the upload thread after every finished upload, e.g. to request a render
+     */
+    public SharedContextUploader(EGL10 egl, EGLDisplay display, EGLConfig config, EGLContext sharedContext,
+                                 int glVersion, Runnable onUploaded){
+        this.mEgl = egl;
+        this.mDisplay = display;
+        this.mConfig = config;
+        this.mSharedContext = sharedContext;
+        this.mGLVersion = glVersion;
+        this.mOnUploaded = onUploaded;
+    }
+
+    /**
+     * Write into textures of the pool of the GL thread where one of the right size is there, null to always create them.
+     */
+    public void setTexturePool(TexturePool texturePool){
+        mTexturePool = texturePool;
+    }
+
+    /**
+     * Start the thread and create the context, waits until it is done.
+     *
+     * @return false if the context or the surface could not be created, the uploader can't be used then
+     */
+    public boolean start(){
+        mThread = new HandlerThread("CoverFlowUploader", Process.THREAD_PRIORITY_BACKGROUND);
+        mThread.start();
+        mHandler = new Handler(mThread.getLooper());
+
+        final CountDownLatch ready = new CountDownLatch(1);
+        mHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                running = createContext();
+                ready.countDown();
+            }
+        });
+
+        try {
+            ready.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        if(!running){
+            mThread.quit();
+        }
+
+        return running;
+    }
+
+    public boolean isRunning(){
+        return running;
+    }
+
+    /**
+     * Upload the bitmap, it goes to the bitmap pool afterwards. Can be called from any thread.
+     */
+    public void upload(Target target, Bitmap bitmap, int tag){
+        upload(target, bitmap, bitmap.getWidth(), bitmap.getHeight(), tag);
+    }
+
+    /**
+     * Upload the bitmap into the top left corner of a larger texture, see
+     * {@link TextureFormats#texImage2D(GL10, Bitmap, int, int)}. Can be called from any thread.
+     */
+    public void upload(Target target, Bitmap bitmap, int textureWidth, int textureHeight, int tag){
+        upload(target, bitmap, textureWidth, textureHeight, false, tag);
+    }
+
+    /**
+     * Upload the bitmap into the top left corner of a larger texture, with all mipmap levels if mipmapped,
+     * see {@link TextureFormats#texImage2DMipmapped(Bitmap)}. Can be called from any thread.
+     */
+    public void upload(Target target, Bitmap bitmap, int textureWidth, int textureHeight, boolean mipmapped, int tag){
+        if(!post(target, bitmap, textureWidth, textureHeight, mipmapped, null, tag)){
+            // the thread is gone already, another holder may still draw it
+            CoverflowBitmapCallback.releaseBitmap(bitmap);
+        }
+    }
+
+    /**
+     * Upload an ETC1 compressed texture. Can be called from any thread.
+     */
+    public void upload(Target target, ETC1Util.ETC1Texture compressed, int tag){
+        post(target, null, 0, 0, false, compressed, tag);
+    }
+
+    private boolean post(final Target target, final Bitmap bitmap, final int textureWidth, final int textureHeight,
+                         final boolean mipmapped, final ETC1Util.ETC1Texture compressed, final int tag){
+        return mHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                if(!running || (bitmap != null && bitmap.isRecycled())){
+                    CoverflowBitmapCallback.releaseBitmap(bitmap);
+                    return;
+                }
+
+                int texture = uploadTexture(bitmap, textureWidth, textureHeight, mipmapped, compressed);
+                if(bitmap != null){
+                    CoverflowBitmapCallback.releaseBitmap(bitmap);
+                }
+
+                finished.add(new Result(target, texture, tag));
+
+                if(mOnUploaded != null){
+                    mOnUploaded.run();
+                }
+            }
+        });
+    }
+
+    /**
+     * Hand the finished textures to their targets, on the GL thread.
+     */
+    public void drain(){
+        Result result;
+        while((result = finished.poll()) != null){
+            result.target.onTextureUploaded(result.texture, result.tag);
+        }
+    }
+
+    /**
+     * Stop the thread and destroy the context, waits until it is done.
+     * Textures already handed out stay valid as long as the shared context lives.
+     */
+    public void quit(){
+        if(mThread == null){
+            return;
+        }
+
+        // the uploads still queued only drop their bitmaps from here on
+        running = false;
+
+        final CountDownLatch done = new CountDownLatch(1);
+        mHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                destroyContext();
+                done.countDown();
+            }
+        });
+
+        try {
+            done.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        mThread.quit();
+        mThread = null;
+        finished.clear();
+    }
+
+    private int uploadTexture(Bitmap bitmap, int textureWidth, int textureHeight, boolean mipmapped,
+                              ETC1Util.ETC1Texture compressed){
+        int[] textures = new int[1];
+
+        TexturePool pool = mTexturePool;
+        if(bitmap != null && pool != null){
+            textures[0] = pool.acquire(textureWidth, textureHeight,
+                    TextureFormats.getFormat(bitmap), TextureFormats.getType(bitmap), mipmapped);
+        }
+
+        if(textures[0] != 0){
+            // same parameters and storage already, only the pixels change
+            mGL.glBindTexture(GL10.GL_TEXTURE_2D, textures[0]);
+            TextureFormats.texSubImage2D(bitmap, mipmapped);
+            mGL.glBindTexture(GL10.GL_TEXTURE_2D, 0);
+            mGL.glFinish();
+            return textures[0];
+        }
+
+        mGL.glGenTextures(1, textures, 0);
+        mGL.glBindTexture(GL10.GL_TEXTURE_2D, textures[0]);
+
+        // same parameters as the textures uploaded on the GL thread
+        mGL.glTexParameterf(GL10.GL_TEXTURE_2D, GL10.GL_TEXTURE_MIN_FILTER,
+                mipmapped ? GL10.GL_LINEAR_MIPMAP_LINEAR : GL10.GL_LINEAR);
+        mGL.glTexParameterf(GL10.GL_TEXTURE_2D, GL10.GL_TEXTURE_MAG_FILTER, GL10.GL_NEAREST);
+        mGL.glTexParameterf(GL10.GL_TEXTURE_2D, GL10.GL_TEXTURE_WRAP_S, GL10.GL_CLAMP_TO_EDGE);
+        mGL.glTexParameterf(GL10.GL_TEXTURE_2D, GL10.GL_TEXTURE_WRAP_T, GL10.GL_CLAMP_TO_EDGE);
+
+        if(mipmapped){
+            TextureFormats.texImage2DMipmapped(bitmap);
+        } else if(bitmap != null){
+            TextureFormats.texImage2D(mGL, bitmap, textureWidth, textureHeight);
+        } else {
+            ETC1Util.loadTexture(GL10.GL_TEXTURE_2D, 0, 0, GL10.GL_RGB, GL10.GL_UNSIGNED_SHORT_5_6_5, compressed);
+        }
+
+        mGL.glBindTexture(GL10.GL_TEXTURE_2D, 0);
+
+        // the fence: the texture is complete before anyone else hears of it
+        mGL.glFinish();
+
+        return textures[0];
+    }
+
+    private boolean createContext(){
+        EGLConfig config = pbufferConfig();
+        if(config == null){
+            return false;
+        }
+
+        int[] contextAttribs = mGLVersion >= 2
+                ? new int[]{EGL_CONTEXT_CLIENT_VERSION, mGLVersion, EGL10.EGL_NONE}
+                : null;
+
+        mContext = mEgl.eglCreateContext(mDisplay, config, mSharedContext, contextAttribs);
+        if(mContext == null || mContext == EGL10.EGL_NO_CONTEXT){
+            mContext = null;
+            return false;
+        }
+
+        int[] surfaceAttribs = {EGL10.EGL_WIDTH, 1, EGL10.EGL_HEIGHT, 1, EGL10.EGL_NONE};
+        mSurface = mEgl.eglCreatePbufferSurface(mDisplay, config, surfaceAttribs);
+        if(mSurface == null || mSurface == EGL10.EGL_NO_SURFACE){
+            mSurface = null;
+            destroyContext();
+            return false;
+        }
+
+        if(!mEgl.eglMakeCurrent(mDisplay, mSurface, mSurface, mContext)){
+            destroyContext();
+            return false;
+        }
+
+        mGL = (GL10) mContext.getGL();
+        return true;
+    }
+
+    private void destroyContext(){
+        mEgl.eglMakeCurrent(mDisplay, EGL10.EGL_NO_SURFACE, EGL10.EGL_NO_SURFACE, EGL10.EGL_NO_CONTEXT);
+
+        if(mSurface != null){
+            mEgl.eglDestroySurface(mDisplay, mSurface);
+            mSurface = null;
+        }
+        if(mContext != null){
+            mEgl.eglDestroyContext(mDisplay, mContext);
+            mContext = null;
+        }
+        mGL = null;
+    }
+
+    /**
+     * The config of the view if it can do pbuffers, otherwise a matching one that can.
+     */
+    private EGLConfig pbufferConfig(){
+        int[] value = new int[1];
+        if(mEgl.eglGetConfigAttrib(mDisplay, mConfig, EGL10.EGL_SURFACE_TYPE, value)
+                && (value[0] & EGL10.EGL_PBUFFER_BIT) != 0){
+            return mConfig;
+        }
+
+        int[] attribs = {
+                EGL10.EGL_RED_SIZE, 8,
+                EGL10.EGL_GREEN_SIZE, 8,
+                EGL10.EGL_BLUE_SIZE, 8,
+                EGL10.EGL_ALPHA_SIZE, 8,
+                EGL10.EGL_RENDERABLE_TYPE, mGLVersion >= 2 ? EGL_OPENGL_ES2_BIT : EGL_OPENGL_ES_BIT,
+                EGL10.EGL_SURFACE_TYPE, EGL10.EGL_PBUFFER_BIT,
+                EGL10.EGL_NONE
+        };
+
+        EGLConfig[] configs = new EGLConfig[1];
+        int[] count = new int[1];
+        if(!mEgl.eglChooseConfig(mDisplay, attribs, configs, 1, count) || count[0] == 0){
+            return null;
+        }
+
+        return configs[0];
+    }
+}
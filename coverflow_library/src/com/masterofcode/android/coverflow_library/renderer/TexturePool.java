@@ -0,0 +1,167 @@
+package com.masterofcode.android.coverflow_library.renderer;
+
+import javax.microedition.khronos.opengles.GL10;
+
+/**
+ * Textures that lost their image, kept with their storage so the next image of the same size and
+ * format is written into them with glTexSubImage2D. No glGenTextures, no new storage and no
+ * glDeleteTextures while scrolling, the driver doesn't allocate and doesn't stall.
+ *
+ * A texture is only handed out for the same width, height, format, type and mipmap levels it was
+ * created with, its parameters are left as they were. Textures beyond the capacity are deleted
+ * by the caller.
+ *
+ * Thread safe, the upload thread takes textures from the pool of the GL thread, the contexts share them.
+ *
+ * @author skynet67
+ */
+public class TexturePool {
+
+    private final int[] names;
+    private final int[] widths;
+    private final int[] heights;
+    private final int[] formats;
+    private final int[] types;
+    private final boolean[] mipmapped;
+    private final long[] sizes;
+    private int count;
+    private long bytes;
+
+    private int reused;
+    private int released;
+
+    /**
+     * @param capacity the most textures kept
+     */
+    public TexturePool(int capacity){
+        names = new int[capacity];
+        widths = new int[capacity];
+        heights = new int[capacity];
+        formats = new int[capacity];
+        types = new int[capacity];
+        mipmapped = new boolean[capacity];
+        sizes = new long[capacity];
+    }
+
+    /**
+     * A texture with matching storage, removed from the pool.
+     *
+     * @return the name of the texture, 0 if there is none
+     */
+    public synchronized int acquire(int width, int height, int format, int type, boolean mipmaps){
+        for(int i = count - 1; i >= 0; i--){
+            if(widths[i] == width && heights[i] == height && formats[i] == format
+                    && types[i] == type && mipmapped[i] == mipmaps){
+                int name = names[i];
+                remove(i);
+                reused++;
+                return name;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Keep the texture for the next image of its size.
+     *
+     * @return false if the pool is full, the caller deletes the texture then
+     */
+    public synchronized boolean release(int name, int width, int height, int format, int type, boolean mipmaps){
+        if(count == names.length){
+            return false;
+        }
+
+        names[count] = name;
+        widths[count] = width;
+        heights[count] = height;
+        formats[count] = format;
+        types[count] = type;
+        mipmapped[count] = mipmaps;
+        sizes[count] = getBytes(width, height, format, type, mipmaps);
+        bytes += sizes[count];
+        count++;
+        released++;
+        return true;
+    }
+
+    private static long getBytes(int width, int height, int format, int type, boolean mipmaps){
+        int texel;
+        if(type == GL10.GL_UNSIGNED_SHORT_5_6_5 || type == GL10.GL_UNSIGNED_SHORT_4_4_4_4
+                || type == GL10.GL_UNSIGNED_SHORT_5_5_5_1 || format == GL10.GL_LUMINANCE_ALPHA){
+            texel = 2;
+        } else if(format == GL10.GL_RGBA){
+            texel = 4;
+        } else if(format == GL10.GL_RGB){
+            texel = 3;
+        } else {
+            texel = 1;
+        }
+
+        long size = (long) width * height * texel;
+        return mipmaps ? size + size / 3 : size;
+    }
+
+    private void remove(int i){
+        bytes -= sizes[i];
+        count--;
+        names[i] = names[count];
+        widths[i] = widths[count];
+        heights[i] = heights[count];
+        formats[i] = formats[count];
+        types[i] = types[count];
+        mipmapped[i] = mipmapped[count];
+        sizes[i] = sizes[count];
+    }
+
+    /**
+     * Delete the textures that were released first until the pool keeps at most the given bytes,
+     * on the GL thread.
+     */
+    public synchronized void trim(GL10 gl, long maxBytes){
+        while(count > 0 && bytes > maxBytes){
+            gl.glDeleteTextures(1, names, 0);
+            remove(0);
+        }
+    }
+
+    /**
+     * Delete all textures of the pool, on the GL thread.
+     */
+    public synchronized void clear(GL10 gl){
+        if(count > 0){
+            gl.glDeleteTextures(count, names, 0);
+        }
+        count = 0;
+        bytes = 0;
+    }
+
+    /**
+     * Forget all textures without deleting them, they died with their EGL context.
+     */
+    public synchronized void abandon(){
+        count = 0;
+        bytes = 0;
+    }
+
+    public synchronized int size(){
+        return count;
+    }
+
+    /**
+     * The GPU memory of the textures in the pool, mipmap levels included.
+     */
+    public synchronized long getBytes(){
+        return bytes;
+    }
+
+    /**
+     * The textures handed out again instead of created.
+     */
+    public synchronized int getReusedCount(){
+        return reused;
+    }
+
+    public synchronized int getReleasedCount(){
+        return released;
+    }
+}
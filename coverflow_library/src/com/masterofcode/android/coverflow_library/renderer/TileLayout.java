@@ -0,0 +1,165 @@
+package com.masterofcode.android.coverflow_library.renderer;
+
+/**
+ * Placement of the tiles, precomputed for every whole offset from the center.
+ *
+ * A tile at offset off is scaled by 1 - |off| / (visibleTiles + 1) and moved by
+ * off * spread, tiles right of the center are also shifted by what the scale took
+ * away. All of it is linear between two whole offsets, so interpolating the table
+ * gives exactly the same placement as computing it.
+ *
+ * The table is rebuilt by {@link #update(int, int, int, float)} only when the
+ * viewport, the number of visible tiles or the tile size changes.
+ *
+ * @author skynet67
+ */
+public class TileLayout {
+
+    // left, bottom, size of the scaled tile
+    private static final int FLOATS_PER_ENTRY = 3;
+
+    private float[] table = new float[0];
+    private int entries;
+    private int first; // the offset of the first entry
+
+    private int width = -1;
+    private int height = -1;
+    private int visibleTiles = -1;
+    private float size = -1;
+
+    /**
+     * Rebuild the table if anything it depends on changed.
+     *
+     * @return true if the table was rebuilt
+     */
+    public boolean update(int width, int height, int visibleTiles, float size){
+        if(this.width == width && this.height == height
+                && this.visibleTiles == visibleTiles && this.size == size){
+            return false;
+        }
+
+        this.width = width;
+        this.height = height;
+        this.visibleTiles = visibleTiles;
+        this.size = size;
+
+        // one tile more on each side, the outer ones slide in while scrolling
+        first = -(visibleTiles + 1);
+        entries = (visibleTiles + 1) * 2 + 1;
+        if(table.length < entries * FLOATS_PER_ENTRY){
+            table = new float[entries * FLOATS_PER_ENTRY];
+        }
+
+        float spread = visibleTiles > 0 ? (width - size) * 0.5f / visibleTiles : 0;
+        float left = (width - size) * 0.5f;
+        float bottom = (height - size) * 0.5f;
+
+        for(int i = 0; i < entries; i++){
+            int off = first + i;
+
+            float scaled = size * (1.0f - (Math.abs(off) * 1.0f / (visibleTiles + 1)));
+            float translate = off * spread;
+            float shiftX = translate > 0 ? (size - scaled) : 0;
+            float shiftY = (size - scaled) * 0.5f;
+
+            int e = i * FLOATS_PER_ENTRY;
+            table[e] = left + translate + shiftX;
+            table[e + 1] = bottom + shiftY;
+            table[e + 2] = scaled;
+        }
+
+        return true;
+    }
+
+    /**
+     * The bottom left corner and the size of the tile at the given offset.
+     *
+     * @param out at least 3 floats: left, bottom, size
+     */
+    public void getPlacement(float off, float[] out){
+        float index = off - first;
+
+        // offsets outside the table continue the outermost segment
+        int i = (int) Math.floor(index);
+        if(i < 0){
+            i = 0;
+        } else if(i > entries - 2){
+            i = entries - 2;
+        }
+        float t = index - i;
+
+        int a = i * FLOATS_PER_ENTRY;
+        int b = a + FLOATS_PER_ENTRY;
+
+        out[0] = table[a] + (table[b] - table[a]) * t;
+        out[1] = table[a + 1] + (table[b + 1] - table[a + 1]) * t;
+        out[2] = table[a + 2] + (table[b + 2] - table[a + 2]) * t;
+    }
+
+    /**
+     * True if any part of the tile at the given offset lands on the viewport.
+     *
+     * @param placement scratch space for {@link #getPlacement(float, float[])}
+     */
+    public boolean isVisible(float off, float[] placement){
+        getPlacement(off, placement);
+
+        float left = placement[0];
+        float bottom = placement[1];
+        float scaled = placement[2];
+
+        return scaled > 0 && left < width && left + scaled > 0 && bottom < height && bottom + scaled > 0;
+    }
+
+    /**
+     * The first and the last tile index that land on the viewport. The tiles move away from the
+     * center and shrink with the distance, so the visible ones are always one run around it.
+     *
+     * @param offset the offset of the center tile
+     * @param count the number of tiles
+     * @param placement scratch space for {@link #getPlacement(float, float[])}
+     * @param out two ints: first and last visible index, last is less than first if none is
+     */
+    public void getVisibleRange(float offset, int count, float[] placement, int[] out){
+        int mid = Math.max(0, Math.min(count - 1, (int) Math.floor(offset + 0.5)));
+
+        if(count <= 0 || !isVisible(mid - offset, placement)){
+            out[0] = 0;
+            out[1] = -1;
+            return;
+        }
+
+        // past visibleTiles + 1 the tiles have no size left, so neither loop runs far
+        int firstIndex = mid;
+        while(firstIndex > 0 && isVisible(firstIndex - 1 - offset, placement)){
+            firstIndex--;
+        }
+
+        int lastIndex = mid;
+        while(lastIndex < count - 1 && isVisible(lastIndex + 1 - offset, placement)){
+            lastIndex++;
+        }
+
+        out[0] = firstIndex;
+        out[1] = lastIndex;
+    }
+
+    /**
+     * The model matrix of the tile at the given offset, column major, for the
+     * vertices of a tile of the layout size with the bottom left corner in 0.0.
+     *
+     * @param placement scratch space for {@link #getPlacement(float, float[])}
+     * @param out 16 floats, only the scale and translation are written, the rest
+     *            must already hold an identity matrix
+     */
+    public void getMatrix(float off, float[] placement, float[] out){
+        getPlacement(off, placement);
+
+        float scale = size != 0 ? placement[2] / size : 0;
+
+        out[0] = scale;
+        out[5] = scale;
+        out[12] = placement[0];
+        out[13] = placement[1];
+    }
+}
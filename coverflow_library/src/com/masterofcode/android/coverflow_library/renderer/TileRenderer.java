@@ -0,0 +1,71 @@
+package com.masterofcode.android.coverflow_library.renderer;
+
+import com.masterofcode.android.coverflow_library.render_objects.AbstractImage;
+import com.masterofcode.android.coverflow_library.render_objects.Background;
+import com.masterofcode.android.coverflow_library.render_objects.TileBatch;
+
+import javax.microedition.khronos.opengles.GL10;
+
+/**
+ * Draws the background and the tiles of the gallery.
+ * All methods are called on the GL thread.
+ *
+ * @author skynet67
+ */
+public interface TileRenderer {
+
+    /**
+     * The EGL context client version the renderer needs.
+     */
+    public int getGLVersion();
+
+    /**
+     * The state cache all GL state changes of the renderer go through.
+     */
+    public GLStateCache getStateCache();
+
+    public void onSurfaceCreated(GL10 gl);
+
+    public void onSurfaceChanged(GL10 gl, int width, int height);
+
+    /**
+     * The number of tiles visible on each side of the center tile, used for the tile scale.
+     */
+    public void setVisibleTiles(int visibleTiles);
+
+    /**
+     * Collect the tiles into the batch instead of drawing them one by one, null to disable.
+     */
+    public void setBatch(TileBatch batch);
+
+    /**
+     * Draw the opaque tiles front to back without blending and with a depth test, the background
+     * only where they leave it uncovered and the translucent tiles back to front over both.
+     * The tiles and the background are then drawn in {@link #endFrame()}. Needs a depth buffer.
+     */
+    public void setFrontToBack(boolean enabled);
+
+    public void beginFrame();
+
+    public void drawBackground(Background background);
+
+    /**
+     * Draw a tile, placed by the {@link TileLayout} of the renderer.
+     *
+     * @param image the image of the tile
+     * @param off the distance of the tile from the center in tiles
+     */
+    public void drawTile(AbstractImage<?> image, float off);
+
+    public void endFrame();
+
+    /**
+     * Draw an image over everything, its vertices in screen coordinates. Called after {@link #endFrame()}.
+     */
+    public void drawOverlay(AbstractImage<?> overlay);
+
+    /**
+     * The number of draw calls issued by the last frame.
+     */
+    public int getDrawCallCount();
+}
@@ -0,0 +1,82 @@
+package com.masterofcode.android.coverflow_library.renderer;
+
+import android.opengl.GLSurfaceView;
+
+import javax.microedition.khronos.egl.EGL10;
+import javax.microedition.khronos.egl.EGLConfig;
+import javax.microedition.khronos.egl.EGLContext;
+import javax.microedition.khronos.egl.EGLDisplay;
+
+/**
+ * Creates the EGL context of the view like the default factory does and, when enabled,
+ * a {@link SharedContextUploader} sharing its objects. The uploader lives exactly as long
+ * as the context of the view.
+ *
+ * @author skynet67
+ */
+public class UploaderContextFactory implements GLSurfaceView.EGLContextFactory {
+
+    private static final int EGL_CONTEXT_CLIENT_VERSION = 0x3098;
+
+    private final int glVersion;
+    private final Runnable onUploaded;
+
+    private volatile boolean enabled;
+
+    private SharedContextUploader uploader;
+
+    /**
+     * @param onUploaded called on the upload thread after every finished upload
+     */
+    public UploaderContextFactory(int glVersion, Runnable onUploaded){
+        this.glVersion = glVersion;
+        this.onUploaded = onUploaded;
+    }
+
+    /**
+     * Takes effect when the next context is created.
+     */
+    public void setEnabled(boolean enabled){
+        this.enabled = enabled;
+    }
+
+    public boolean isEnabled(){
+        return enabled;
+    }
+
+    /**
+     * The uploader of the current context, null if disabled or it could not be started. GL thread only.
+     */
+    public SharedContextUploader getUploader(){
+        return uploader;
+    }
+
+    @Override
+    public EGLContext createContext(EGL10 egl, EGLDisplay display, EGLConfig config) {
+        int[] attribs = glVersion >= 2
+                ? new int[]{EGL_CONTEXT_CLIENT_VERSION, glVersion, EGL10.EGL_NONE}
+                : null;
+
+        EGLContext context = egl.eglCreateContext(display, config, EGL10.EGL_NO_CONTEXT, attribs);
+
+        if(enabled && context != null && context != EGL10.EGL_NO_CONTEXT){
+            uploader = new SharedContextUploader(egl, display, config, context, glVersion, onUploaded);
+            if(!uploader.start()){
+                // no shared context on this device, upload on the GL thread
+                uploader = null;
+            }
+        }
+
+        return context;
+    }
+
+    @Override
+    public void destroyContext(EGL10 egl, EGLDisplay display, EGLContext context) {
+        if(uploader != null){
+            uploader.quit();
+            uploader = null;
+        }
+
+        egl.eglDestroyContext(display, context);
+    }
+}
@@ -0,0 +1,162 @@
+package com.masterofcode.android.coverflow_library.utils;
+
+import android.graphics.Bitmap;
+import android.os.Build;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Mutable bitmaps that are no longer needed, kept for the next decode or letterbox of the same
+ * size and config instead of allocating new pixels. The least recently released bitmaps are
+ * recycled when the pool grows over its byte limit.
+ *
+ * Thread safe, bitmaps are released on the GL and the upload thread and taken on the loader threads.
+ *
+ * @author skynet67
+ */
+public class BitmapPool {
+
+    // KitKat, a reconfigured bitmap keeps the allocation of its larger past
+    private static final Method getAllocationByteCount = findAllocationByteCount();
+
+    private final List<Bitmap> bitmaps = new ArrayList<Bitmap>();
+    private final long maxBytes;
+    private long bytes;
+
+    private int hits;
+    private int misses;
+
+    /**
+     * @param maxBytes the most bytes of pixels kept
+     */
+    public BitmapPool(long maxBytes){
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * A bitmap of exactly the given size and config, its pixels are undefined.
+     *
+     * @return the bitmap, null if there is none
+     */
+    public synchronized Bitmap acquire(int width, int height, Bitmap.Config config){
+        for(int i = bitmaps.size() - 1; i >= 0; i--){
+            Bitmap bitmap = bitmaps.get(i);
+            if(bitmap.getWidth() == width && bitmap.getHeight() == height && bitmap.getConfig() == config){
+                return take(i);
+            }
+        }
+
+        misses++;
+        return null;
+    }
+
+    /**
+     * The smallest bitmap of the config that holds at least the given bytes, for inBitmap from KitKat on.
+     *
+     * @return the bitmap, null if there is none
+     */
+    public synchronized Bitmap acquire(int byteCount, Bitmap.Config config){
+        int best = -1;
+        int bestBytes = Integer.MAX_VALUE;
+
+        for(int i = 0; i < bitmaps.size(); i++){
+            Bitmap bitmap = bitmaps.get(i);
+            int size = byteCount(bitmap);
+            if(bitmap.getConfig() == config && size >= byteCount && size < bestBytes){
+                best = i;
+                bestBytes = size;
+            }
+        }
+
+        if(best < 0){
+            misses++;
+            return null;
+        }
+        return take(best);
+    }
+
+    private Bitmap take(int i){
+        Bitmap bitmap = bitmaps.remove(i);
+        bytes -= byteCount(bitmap);
+        hits++;
+        return bitmap;
+    }
+
+    /**
+     * Keep the bitmap for reuse, it must not be used by the caller afterwards.
+     * Immutable and recycled bitmaps are ignored.
+     */
+    public synchronized void release(Bitmap bitmap){
+        if(bitmap == null || bitmap.isRecycled() || !bitmap.isMutable() || bitmaps.contains(bitmap)){
+            return;
+        }
+
+        int size = byteCount(bitmap);
+        if(size > maxBytes){
+            bitmap.recycle();
+            return;
+        }
+
+        bitmaps.add(bitmap);
+        bytes += size;
+
+        while(bytes > maxBytes){
+            Bitmap eldest = bitmaps.remove(0);
+            bytes -= byteCount(eldest);
+            eldest.recycle();
+        }
+    }
+
+    public synchronized void clear(){
+        for(Bitmap bitmap : bitmaps){
+            bitmap.recycle();
+        }
+        bitmaps.clear();
+        bytes = 0;
+    }
+
+    public synchronized long getBytes(){
+        return bytes;
+    }
+
+    /**
+     * The requests served from the pool.
+     */
+    public synchronized int getHits(){
+        return hits;
+    }
+
+    /**
+     * The requests that had to allocate.
+     */
+    public synchronized int getMisses(){
+        return misses;
+    }
+
+    /**
+     * The bytes the pixels of the bitmap really take, more than its size needs after an inBitmap decode.
+     */
+    static int byteCount(Bitmap bitmap){
+        if(getAllocationByteCount != null){
+            try{
+                return (Integer) getAllocationByteCount.invoke(bitmap);
+            }catch(Exception e){
+                // counted from the size below
+            }
+        }
+        return bitmap.getRowBytes() * bitmap.getHeight();
+    }
+
+    private static Method findAllocationByteCount(){
+        if(Build.VERSION.SDK_INT < 19){
+            return null;
+        }
+        try{
+            return Bitmap.class.getMethod("getAllocationByteCount");
+        }catch(NoSuchMethodException e){
+            return null;
+        }
+    }
+}
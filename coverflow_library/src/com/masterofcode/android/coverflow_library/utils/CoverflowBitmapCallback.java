@@ -19,6 +19,7 @@ package com.masterofcode.android.coverflow_library.utils;
 import android.content.Context;
 import android.graphics.*;
 import android.media.ExifInterface;
+import android.os.Build;
 import android.view.View;
 import android.widget.ImageView;
 import com.androidquery.AQuery;
@@ -36,6 +37,7 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 
 /**
@@ -43,10 +45,11 @@ import java.util.WeakHashMap;
  *
  * @author skynet67
 */
-public class CoverflowBitmapCallback extends AbstractAjaxCallback<Bitmap, CoverflowBitmapCallback> {
+public class CoverflowBitmapCallback extends AbstractAjaxCallback<Bitmap, CoverflowBitmapCallback> implements DecodeScheduler.Job {
 
     private static int SMALL_MAX = 20;
     private static int BIG_MAX = 20;
+    private static final long BITMAP_POOL_BYTES = 12 * 1024 * 1024;
     private static int SMALL_PIXELS = 50 * 50;
     private static int BIG_PIXELS = 400 * 400;
     private static int BIG_TPIXELS = 1000000;
@@ -76,6 +79,20 @@ public class CoverflowBitmapCallback extends AbstractAjaxCallback<Bitmap, Coverf
 
     private ImageLoadCallback mCallbackRunnable;
 
+    private Etc1Cache etc1Cache;
+
+    private EFormatPolicy formatPolicy = EFormatPolicy.AUTO;
+
+    private boolean aspectExact;
+
+    private int position = NO_POSITION;
+    private DecodeScheduler scheduler;
+
+    // set by the first of the callback and the cancel
+    private final AtomicBoolean finished = new AtomicBoolean();
+    private volatile boolean cancelled;
+    private volatile boolean requested;  // counted in the load stats, memory cache hits are not
+
     private static boolean showBlackBars = true;
 
     /**
@@ -101,6 +118,123 @@ public class CoverflowBitmapCallback extends AbstractAjaxCallback<Bitmap, Coverf
     }
 
 
+    /**
+     * Set how the pixel format of the texture bitmap is chosen.
+     *
+     * @param formatPolicy the policy
+     * @return self
+     */
+    public CoverflowBitmapCallback formatPolicy(EFormatPolicy formatPolicy){
+        this.formatPolicy = formatPolicy;
+        return this;
+    }
+
+    /**
+     * Keep the aspect ratio of the image instead of padding it to a square texture.
+     * The result is cached apart from the square one.
+     *
+     * @param aspectExact aspect exact
+     * @return self
+     */
+    public CoverflowBitmapCallback aspectExact(boolean aspectExact){
+        this.aspectExact = aspectExact;
+        return this;
+    }
+
+    /**
+     * Set the index of the cover, the loads nearest to the center of the gallery run first.
+     *
+     * @param position the index, {@link #NO_POSITION} to run before the covers
+     * @return self
+     */
+    public CoverflowBitmapCallback position(int position){
+        this.position = position;
+        return this;
+    }
+
+    @Override
+    public int getPosition(){
+        return position;
+    }
+
+    /**
+     * Run the file cache lookup, the download and the decode on the scheduler of the gallery, nearest
+     * to the center first. Without a scheduler the load runs on the pool of AQuery in the order it came in.
+     *
+     * @param scheduler the scheduler, null for none
+     * @return self
+     */
+    public CoverflowBitmapCallback scheduler(DecodeScheduler scheduler){
+        this.scheduler = scheduler;
+        return this;
+    }
+
+    /**
+     * Run the whole load on the worker of the scheduler: the file cache lookup, the download of an
+     * image that isn't cached yet and its decode. The callback is posted to the UI thread by AQuery.
+     */
+    @Override
+    public void load(){
+        if(cancelled){
+            return;
+        }
+
+        // what async() of AQuery sets up before it hands the load to its own pool
+        status = new AjaxStatus();
+        run();
+    }
+
+    /**
+     * Cancel the load, the callback isn't called anymore. A load waiting for the scheduler never runs,
+     * a running download is aborted and the decode after it is skipped. Any thread.
+     *
+     * @return false if the load finished or was cancelled before
+     */
+    public boolean cancelLoad(){
+        if(!finished.compareAndSet(false, true)){
+            return false;
+        }
+
+        cancelled = true;
+        if(scheduler != null && scheduler.remove(this)){
+            if(requested){
+                loadStats.addCancelled();
+            }
+        } else {
+            abort();
+            if(requested){
+                loadStats.addWasted();
+            }
+        }
+        return true;
+    }
+
+    public boolean isCancelled(){
+        return cancelled;
+    }
+
+    /**
+     * The key the aspect exact variant of an url is cached under, in memory and in the ETC1 cache.
+     *
+     * @param url the url
+     * @param aspectExact aspect exact
+     * @return the key
+     */
+    public static String variantKey(String url, boolean aspectExact){
+        return aspectExact && url != null ? url + "#aspect" : url;
+    }
+
+    /**
+     * Compress the decoded image into the ETC1 cache, on the loader thread.
+     *
+     * @param etc1Cache the cache, null to skip compression
+     * @return self
+     */
+    public CoverflowBitmapCallback etc1Cache(Etc1Cache etc1Cache){
+        this.etc1Cache = etc1Cache;
+        return this;
+    }
+
     /**
      * Set the image source file.
      *
@@ -246,8 +380,9 @@ public class CoverflowBitmapCallback extends AbstractAjaxCallback<Bitmap, Coverf
             options = new BitmapFactory.Options();
         }
 
-        options.inInputShareable = true;
-        options.inPurgeable = true;
+        // purgeable pixels can't be reused
+        options.inInputShareable = options.inBitmap == null;
+        options.inPurgeable = options.inBitmap == null;
 
         FileInputStream fis = null;
 
@@ -307,6 +442,28 @@ public class CoverflowBitmapCallback extends AbstractAjaxCallback<Bitmap, Coverf
     private static Matrix getRotateMatrix(int ori){
 
         Matrix matrix = new Matrix();
+        setOrientation(matrix, ori);
+        return matrix;
+
+    }
+
+    private static int readOrientation(String path){
+        try{
+            ExifInterface ei = new ExifInterface(path);
+            return ei.getAttributeInt(ExifInterface.TAG_ORIENTATION, ExifInterface.ORIENTATION_NORMAL);
+        }catch(Exception e){
+            //simply fallback to normal orientation
+            AQUtility.debug(e);
+            return ExifInterface.ORIENTATION_NORMAL;
+        }
+    }
+
+    /**
+     * The transform of an EXIF orientation around the origin.
+     */
+    private static void setOrientation(Matrix matrix, int ori){
+
+        matrix.reset();
         switch (ori) {
             case 2:
                 matrix.setScale(-1, 1);
@@ -335,8 +492,6 @@ public class CoverflowBitmapCallback extends AbstractAjaxCallback<Bitmap, Coverf
 
         }
 
-        return matrix;
-
     }
 
     public static Bitmap getResizedImage(String path, byte[] data, int target, boolean width, int round, boolean showBlackBars){
@@ -355,6 +510,49 @@ public class CoverflowBitmapCallback extends AbstractAjaxCallback<Bitmap, Coverf
      * @return the resized image
      */
     public static Bitmap getResizedImage(String path, byte[] data, int target, boolean width, int round, boolean rotate, boolean showBlackBars){
+        return getResizedImage(path, data, target, width, round, rotate, showBlackBars, EFormatPolicy.BLACK_BARS);
+    }
+
+    /**
+     * Utility method for downsampling images.
+     *
+     * @param path the file path
+     * @param data if file path is null, provide the image data directly
+     * @param target the target dimension
+     * @param width use width as target, otherwise use the higher value of height or width
+     * @param round corner radius
+     * @param rotate auto rotate with exif data
+     * @param formatPolicy how the pixel format of the result is chosen
+     * @return the resized image, ALPHA_8 holds luminance
+     */
+    public static Bitmap getResizedImage(String path, byte[] data, int target, boolean width, int round, boolean rotate, boolean showBlackBars, EFormatPolicy formatPolicy){
+        return getResizedImage(path, data, target, width, round, rotate, showBlackBars, formatPolicy, false);
+    }
+
+    /**
+     * Utility method for downsampling images.
+     *
+     * @param path the file path
+     * @param data if file path is null, provide the image data directly
+     * @param target the target dimension
+     * @param width use width as target, otherwise use the higher value of height or width
+     * @param round corner radius
+     * @param rotate auto rotate with exif data
+     * @param formatPolicy how the pixel format of the result is chosen
+     * @param aspectExact keep the aspect ratio, the longer side is the target and the other one is
+     *                    rounded up to a multiple of 4, nothing is padded
+     * @return the resized image, ALPHA_8 holds luminance
+     */
+    public static Bitmap getResizedImage(String path, byte[] data, int target, boolean width, int round, boolean rotate, boolean showBlackBars, EFormatPolicy formatPolicy, boolean aspectExact){
+        TraceCompat.beginSection("CoverFlow decode");
+        try {
+            return decodeResized(path, data, target, width, round, rotate, showBlackBars, formatPolicy, aspectExact);
+        } finally {
+            TraceCompat.endSection();
+        }
+    }
+
+    private static Bitmap decodeResized(String path, byte[] data, int target, boolean width, int round, boolean rotate, boolean showBlackBars, EFormatPolicy formatPolicy, boolean aspectExact){
 
         if(path == null && data == null) return null;
 
@@ -362,12 +560,18 @@ public class CoverflowBitmapCallback extends AbstractAjaxCallback<Bitmap, Coverf
 
         float desiredScale = 1.0f;
 
+        // the orientation goes into the one transform below, the decoded bitmap is never rotated on its own
+        int orientation = rotate && path != null ? readOrientation(path) : ExifInterface.ORIENTATION_NORMAL;
+        boolean swapped = orientation >= ExifInterface.ORIENTATION_TRANSPOSE;
+        long sourcePixels = 0;
+
         if(target > 0){
 
             BitmapFactory.Options info = new BitmapFactory.Options();
             info.inJustDecodeBounds = true;
 
-            decode(path, data, info, rotate);
+            decode(path, data, info, false);
+            sourcePixels = (long) info.outWidth * info.outHeight;
 
 //            int dim = info.outWidth;
 //            if(!width) dim = Math.max(dim, info.outHeight);
@@ -382,13 +586,23 @@ public class CoverflowBitmapCallback extends AbstractAjaxCallback<Bitmap, Coverf
             options.inScaled = false;
             options.inPreferredConfig = Bitmap.Config.ARGB_8888;
 
+            options.inBitmap = acquireDecodeBitmap(info.outWidth, info.outHeight, ssize);
+            options.inMutable = options.inBitmap != null;
+
         }
 
         try{
-            Bitmap bm = decode(path, data, options, rotate);
+            Bitmap bm = decodeReusing(path, data, options, false);
+            if(bm == null){
+                return null;
+            }
+
+            int decodedWidth = bm.getWidth();
+            int decodedHeight = bm.getHeight();
 
-            int w = bm.getWidth();
-            int h = bm.getHeight();
+            // the size after the orientation
+            int w = swapped ? decodedHeight : decodedWidth;
+            int h = swapped ? decodedWidth : decodedHeight;
 
             float desiredScaleWidth = (float) target / w;
             float desiredScaleHeight = (float) target/ h;
@@ -403,27 +617,79 @@ public class CoverflowBitmapCallback extends AbstractAjaxCallback<Bitmap, Coverf
                 desiredScale = 1.0f;
             }
 
-            Bitmap bmpWithBorders = Bitmap.createBitmap(target, target, showBlackBars ? Bitmap.Config.RGB_565 : Bitmap.Config.ARGB_8888);
-            Canvas cv = new Canvas(bmpWithBorders);
+            int bitmapWidth = target;
+            int bitmapHeight = target;
+            float scaleX = desiredScale;
+            float scaleY = desiredScale;
+
+            if(aspectExact){
+                // multiples of 4 keep the bitmap compressible, the stretch is at most 3 pixels
+                bitmapWidth = Math.min(target, (Math.round(realTexWidth) + 3) & ~3);
+                bitmapHeight = Math.min(target, (Math.round(realTexHeight) + 3) & ~3);
+                scaleX = (float) bitmapWidth / w;
+                scaleY = (float) bitmapHeight / h;
+                realTexWidth = bitmapWidth;
+                realTexHeight = bitmapHeight;
+            }
 
-            float left = (target - realTexWidth) / 2;
-            float top = (target - realTexHeight) / 2;
+            // the uncovered part of the texture is transparent without black bars, and so are round corners
+            boolean transparentMargins = round > 0 || (!showBlackBars
+                    && (Math.round(realTexWidth) < bitmapWidth || Math.round(realTexHeight) < bitmapHeight));
 
-            Matrix matrix = new Matrix();
-            matrix.postScale(desiredScale, desiredScale);
+            TextureFormats.Content content = formatPolicy == EFormatPolicy.AUTO || formatPolicy == EFormatPolicy.SMALLEST
+                    ? TextureFormats.analyze(bm) : new TextureFormats.Content();
+            Bitmap.Config config = TextureFormats.select(formatPolicy, content, showBlackBars, transparentMargins);
+
+            // luminance is drawn in color first, there is no canvas for it
+            boolean luminance = config == Bitmap.Config.ALPHA_8;
+
+            Bitmap bmpWithBorders = obtainBitmap(bitmapWidth, bitmapHeight, luminance ? Bitmap.Config.ARGB_8888 : config);
+
+            DecodeScratch scratch = decodeScratch.get();
+            Canvas cv = scratch.canvas;
+            cv.setBitmap(bmpWithBorders);
+            if(luminance){
+                // the black bars
+                cv.drawColor(Color.BLACK);
+            }
+
+            float left = (bitmapWidth - realTexWidth) / 2;
+            float top = (bitmapHeight - realTexHeight) / 2;
+
+            // orientation, scale and letterbox offset in one transform
+            Matrix matrix = scratch.matrix;
+            setOrientation(matrix, orientation);
+            RectF bounds = scratch.bounds;
+            bounds.set(0, 0, decodedWidth, decodedHeight);
+            matrix.mapRect(bounds);
+            matrix.postTranslate(-bounds.left, -bounds.top);
+            matrix.postScale(scaleX, scaleY);
             matrix.postTranslate(left, top);
 
-            Paint paint = new Paint();
+            Paint paint = scratch.paint;
             paint.setFilterBitmap(true);
+            // no banding in 16 bit formats
+            paint.setDither(config == Bitmap.Config.RGB_565 || config == Bitmap.Config.ARGB_4444);
 
             cv.drawBitmap(bm, matrix, paint);
 
-            bm.recycle();
+            if(Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB){
+                // don't keep the bitmap alive through the canvas of the thread
+                cv.setBitmap(null);
+            }
+
+            releaseDecodeBitmap(bm);
+
+            decodeStats.add(sourcePixels, (long) decodedWidth * decodedHeight, (long) bitmapWidth * bitmapHeight);
 
             if(round > 0){
                 bmpWithBorders = getRoundedCornerBitmap(bmpWithBorders , round);
             }
 
+            if(luminance){
+                bmpWithBorders = TextureFormats.toLuminance(bmpWithBorders, bitmapPool);
+            }
+
             return bmpWithBorders;
 
         }catch(OutOfMemoryError e){
@@ -436,6 +702,174 @@ public class CoverflowBitmapCallback extends AbstractAjaxCallback<Bitmap, Coverf
     }
 
 
+    /**
+     * Canvas, matrix and paint of the letterbox, one set per loader thread.
+     */
+    private static class DecodeScratch {
+        final Canvas canvas = new Canvas();
+        final Matrix matrix = new Matrix();
+        final Paint paint = new Paint();
+        final RectF bounds = new RectF();
+    }
+
+    private static final DecodeStats decodeStats = new DecodeStats();
+
+    private static final LoadStats loadStats = new LoadStats();
+
+    /**
+     * The loads used by the covers against the ones cancelled and wasted.
+     */
+    public static LoadStats getLoadStats(){
+        return loadStats;
+    }
+
+    /**
+     * The pixels read from the sources, decoded after the subsampling and written to the covers.
+     */
+    public static DecodeStats getDecodeStats(){
+        return decodeStats;
+    }
+
+    private static final ThreadLocal<DecodeScratch> decodeScratch = new ThreadLocal<DecodeScratch>(){
+        @Override
+        protected DecodeScratch initialValue() {
+            return new DecodeScratch();
+        }
+    };
+
+    private static final BitmapPool bitmapPool = new BitmapPool(BITMAP_POOL_BYTES);
+
+    // the covers holding a bitmap, a cover that drops one without releasing it only keeps it from the pool
+    private static final Map<Bitmap, int[]> holders = new WeakHashMap<Bitmap, int[]>();
+
+    /**
+     * The bitmaps given back after their upload, reused by the next decodes.
+     */
+    public static BitmapPool getBitmapPool(){
+        return bitmapPool;
+    }
+
+    /**
+     * Give a bitmap back after its upload instead of recycling it, the next decode reuses its pixels.
+     * The memory cache forgets it, it must not be used anymore.
+     */
+    public static void releaseBitmap(Bitmap bm){
+        if(bm == null || bm == empty || bm == dummy){
+            return;
+        }
+
+        forget(getBCache(), bm);
+        forget(getSCache(), bm);
+        forget(getICache(), bm);
+
+        synchronized (holders){
+            int[] count = holders.get(bm);
+            if(count != null && --count[0] > 0){
+                // another cover got it from the memory cache too, the last one gives it back
+                return;
+            }
+            holders.remove(bm);
+        }
+
+        if(Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB){
+            bitmapPool.release(bm);
+        } else {
+            bm.recycle();
+        }
+    }
+
+    /**
+     * Count a cover holding the bitmap, it is only pooled when the last holder released it.
+     * Bitmaps from the memory cache can be handed to several covers, e.g. for duplicate urls.
+     *
+     * @return the bitmap
+     */
+    public static Bitmap retainBitmap(Bitmap bm){
+        if(bm == null || bm == empty || bm == dummy){
+            return bm;
+        }
+
+        synchronized (holders){
+            int[] count = holders.get(bm);
+            if(count == null){
+                holders.put(bm, new int[]{1});
+            } else {
+                count[0]++;
+            }
+        }
+        return bm;
+    }
+
+    private static void forget(Map<String, Bitmap> cache, Bitmap bm){
+        synchronized (cache){
+            while(cache.values().remove(bm)){
+                // the same bitmap can be there under several keys
+            }
+        }
+    }
+
+    /**
+     * A bitmap for the letterbox from the pool, cleared like a new one.
+     */
+    private static Bitmap obtainBitmap(int width, int height, Bitmap.Config config){
+        Bitmap bitmap = bitmapPool.acquire(width, height, config);
+        if(bitmap == null){
+            return Bitmap.createBitmap(width, height, config);
+        }
+
+        bitmap.eraseColor(Color.TRANSPARENT);
+        return bitmap;
+    }
+
+    /**
+     * A pooled bitmap the decoder can write into, null if there is none or the platform can't.
+     * Before KitKat only a bitmap of the same size works, and only without subsampling.
+     */
+    private static Bitmap acquireDecodeBitmap(int width, int height, int sampleSize){
+        if(Build.VERSION.SDK_INT >= 19){
+            int w = (width + sampleSize - 1) / sampleSize;
+            int h = (height + sampleSize - 1) / sampleSize;
+            return bitmapPool.acquire(w * h * 4, Bitmap.Config.ARGB_8888);
+        }
+
+        if(Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB && sampleSize == 1){
+            return bitmapPool.acquire(width, height, Bitmap.Config.ARGB_8888);
+        }
+
+        return null;
+    }
+
+    private static Bitmap decodeReusing(String path, byte[] data, BitmapFactory.Options options, boolean rotate){
+        Bitmap reuse = options != null ? options.inBitmap : null;
+
+        Bitmap bm;
+        try {
+            bm = decode(path, data, options, rotate);
+        } catch (IllegalArgumentException e){
+            if(reuse == null){
+                throw e;
+            }
+
+            // the pooled bitmap didn't fit after all
+            options.inBitmap = null;
+            options.inMutable = false;
+            bm = decode(path, data, options, rotate);
+        }
+
+        if(reuse != null && bm != reuse){
+            bitmapPool.release(reuse);
+        }
+        return bm;
+    }
+
+    private static void releaseDecodeBitmap(Bitmap bm){
+        if(Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB && bm.isMutable()){
+            bitmapPool.release(bm);
+        } else {
+            bm.recycle();
+        }
+    }
+
     private static int sampleSize(int width, int target){
 
 
@@ -455,17 +889,23 @@ public class CoverflowBitmapCallback extends AbstractAjaxCallback<Bitmap, Coverf
         return result;
     }
 
+    /**
+     * The largest power of two subsample that keeps the longer side at the target or above,
+     * the longer side is the one scaled to the target.
+     */
     private static int sampleSize(int width, int height, int target){
-        double factorW = (float)width/(float)(target);
-        double factorH = (float)height/(float)(target);
+        int longer = Math.max(width, height);
 
-        double factor = Math.max(factorW, factorH);
+        int result = 1;
+        while(target > 0 && longer / (result * 2) >= target){
+            result *= 2;
+        }
 
-        return (int) Math.pow(2, Math.floor(Math.sqrt(factor)));
+        return result;
     }
 
     private Bitmap bmGet(String path, byte[] data){
-        return getResizedImage(path, data, targetWidth, targetDim, round, rotate, true);
+        return getResizedImage(path, data, targetWidth, targetDim, round, rotate, true, formatPolicy, aspectExact);
 
     }
 
@@ -476,19 +916,39 @@ public class CoverflowBitmapCallback extends AbstractAjaxCallback<Bitmap, Coverf
             return imageFile;
         }
 
-        return super.accessFile(cacheDir, url);
+        // AQuery only knows the cache dir when its own pool runs the load
+        return super.accessFile(cacheDir != null ? cacheDir : AQUtility.getCacheDir(mContext), url);
+    }
+
+    @Override
+    protected File getCacheFile(){
+        return AQUtility.getCacheFile(AQUtility.getCacheDir(mContext), getUrl());
     }
 
 
     @Override
     protected Bitmap fileGet(String url, File file, AjaxStatus status) {
-        return bmGet(file.getAbsolutePath(), null);
+        if(cancelled){
+            return null;
+        }
+        return compress(url, bmGet(file.getAbsolutePath(), null));
+    }
+
+    private Bitmap compress(String url, Bitmap bm){
+        if(etc1Cache != null && Etc1Cache.canCompress(bm)){
+            etc1Cache.put(variantKey(url, aspectExact), targetWidth, bm);
+        }
+        return bm;
     }
 
 
 
     @Override
     public Bitmap transform(String url, byte[] data, AjaxStatus status) {
+        if(cancelled){
+            // the download finished before the abort reached it
+            return null;
+        }
 
         String path = null;
 
@@ -510,7 +970,7 @@ public class CoverflowBitmapCallback extends AbstractAjaxCallback<Bitmap, Coverf
             path = file.getAbsolutePath();
         }
 
-        Bitmap bm = bmGet(path, data);
+        Bitmap bm = compress(url, bmGet(path, data));
 
         if(bm == null){
 
@@ -580,8 +1040,16 @@ public class CoverflowBitmapCallback extends AbstractAjaxCallback<Bitmap, Coverf
 
     @Override
     public final void callback(String url, Bitmap bm, AjaxStatus status) {
+        if(!finished.compareAndSet(false, true)){
+            // cancelled, counted there
+            return;
+        }
+        if(bm != null && requested){
+            loadStats.addUsed();
+        }
+
         if(mCallbackRunnable != null){
-            mCallbackRunnable.onLoad(bm);
+            mCallbackRunnable.onLoad(retainBitmap(bm));
         }
     }
 
@@ -694,7 +1162,7 @@ public class CoverflowBitmapCallback extends AbstractAjaxCallback<Bitmap, Coverf
     protected Bitmap memGet(String url){
         if(bm != null) return bm;
         if(!memCache) return null;
-        return memGet(url, targetWidth, round);
+        return memGet(variantKey(url, aspectExact), targetWidth, round);
     }
 
     /**
@@ -718,6 +1186,18 @@ public class CoverflowBitmapCallback extends AbstractAjaxCallback<Bitmap, Coverf
         return memGet(url, targetWidth, 0);
     }
 
+    /**
+     * Gets the memory cached bitmap.
+     *
+     * @param url the url
+     * @param targetWidth the target width, 0 for non downsampling
+     * @param aspectExact the aspect exact variant instead of the square one
+     * @return the memory cached bitmap
+     */
+    public static Bitmap getMemoryCached(String url, int targetWidth, boolean aspectExact){
+        return memGet(variantKey(url, aspectExact), targetWidth, 0);
+    }
+
     private static Bitmap memGet(String url, int targetWidth, int round){
 
         url = getKey(url, targetWidth, round);
@@ -797,7 +1277,7 @@ public class CoverflowBitmapCallback extends AbstractAjaxCallback<Bitmap, Coverf
 
     @Override
     protected void memPut(String url, Bitmap bm){
-        memPut(url, targetWidth, round, bm, invalid);
+        memPut(variantKey(url, aspectExact), targetWidth, round, bm, invalid);
     }
 
 
@@ -839,7 +1319,13 @@ public class CoverflowBitmapCallback extends AbstractAjaxCallback<Bitmap, Coverf
 
 
         if(!queueMap.containsKey(url)){
-            super.async(context);
+            requested = true;
+            loadStats.addRequested();
+            if(scheduler != null){
+                scheduler.add(this);
+            } else {
+                super.async(context);
+            }
         }else{
             showProgress(true);
         }
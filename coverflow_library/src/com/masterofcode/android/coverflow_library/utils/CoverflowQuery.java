@@ -33,6 +33,10 @@ public class CoverflowQuery extends AQuery {
 
     boolean showBlackBars = true;
 
+    EFormatPolicy formatPolicy = EFormatPolicy.AUTO;
+
+    boolean aspectExact;
+
     public CoverflowQuery(Activity act) {
         super(act);
     }
@@ -54,6 +58,22 @@ public class CoverflowQuery extends AQuery {
         return this;
     }
 
+    /**
+     * Set how the pixel format of the cover textures is chosen.
+     */
+    public CoverflowQuery setFormatPolicy(EFormatPolicy formatPolicy){
+        this.formatPolicy = formatPolicy;
+        return this;
+    }
+
+    /**
+     * Keep the aspect ratio of the covers instead of padding them to square textures.
+     */
+    public CoverflowQuery setAspectExact(boolean value){
+        this.aspectExact = value;
+        return this;
+    }
+
     /**
      * Set the image of an ImageView with a custom callback.
      *
@@ -76,7 +96,7 @@ public class CoverflowQuery extends AQuery {
      */
     public CoverflowQuery image(String url, boolean memCache, boolean fileCache, int targetWidth, int resId, CoverflowBitmapCallback callback){
 
-        callback.targetWidth(targetWidth).fallback(resId)
+        callback.targetWidth(targetWidth).fallback(resId).formatPolicy(formatPolicy).aspectExact(aspectExact)
                 .url(url).memCache(memCache).fileCache(fileCache);
 
         return image(callback);
@@ -99,15 +119,21 @@ public class CoverflowQuery extends AQuery {
     @Override
     public Bitmap getCachedImage(String url, int targetWidth){
 
-        Bitmap result = CoverflowBitmapCallback.getMemoryCached(url, targetWidth);
+        Bitmap result = CoverflowBitmapCallback.getMemoryCached(url, targetWidth, aspectExact);
+        if(result != null && result.isRecycled()){
+            // the texture upload already recycled it
+            result = null;
+        }
+
         if(result == null){
             File file = getCachedFile(url);
             if(file != null){
-                result = CoverflowBitmapCallback.getResizedImage(file.getAbsolutePath(), null, targetWidth, true, 0, showBlackBars);
+                result = CoverflowBitmapCallback.getResizedImage(file.getAbsolutePath(), null, targetWidth, true, 0, false, showBlackBars, formatPolicy, aspectExact);
             }
         }
 
-        return result;
+        // pooled only when every cover that got it gave it back
+        return CoverflowBitmapCallback.retainBitmap(result);
     }
 
     /**
@@ -0,0 +1,216 @@
+package com.masterofcode.android.coverflow_library.utils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Runs the loads of the covers of one gallery, the ones nearest to the center first.
+ *
+ * The pending jobs are not sorted when they come in, the next job is picked by its distance from
+ * the center at the moment a worker is free. Moving the center re-prioritizes all of them, after
+ * a fling the covers that end up on the screen go before the ones flown past. Jobs without a
+ * position go first, in the order they came in.
+ *
+ * At most one job per core runs at a time, on the executor of the host app or on an own pool.
+ *
+ * @author skynet67
+ */
+public class DecodeScheduler {
+
+    /**
+     * A load of a cover.
+     */
+    public interface Job {
+
+        int NO_POSITION = -1;
+
+        /**
+         * @return the index of the cover, {@link #NO_POSITION} if there is none
+         */
+        int getPosition();
+
+        /**
+         * Do the work, on a worker thread.
+         */
+        void load();
+    }
+
+    private final List<Job> pending = new ArrayList<Job>();
+    private final int maxRunning;
+    private int running;
+
+    private Executor executor;
+    private ExecutorService defaultExecutor;
+
+    private volatile float center;
+
+    private final Runnable worker = new Runnable() {
+        @Override
+        public void run() {
+            boolean drained = false;
+            try{
+                Job job;
+                while((job = next()) != null){
+                    job.load();
+                }
+                drained = true;
+            }finally{
+                if(!drained){
+                    // the job threw, another worker takes over its slot
+                    workerFailed();
+                }
+            }
+        }
+    };
+
+    public DecodeScheduler(){
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param maxRunning the most jobs running at the same time
+     */
+    public DecodeScheduler(int maxRunning){
+        this.maxRunning = Math.max(1, maxRunning);
+    }
+
+    /**
+     * The executor the jobs run on, the number of running jobs is still limited by the scheduler.
+     *
+     * @param executor the executor of the host app, null for an own pool
+     */
+    public synchronized void setExecutor(Executor executor){
+        this.executor = executor;
+    }
+
+    /**
+     * Called when the offset of the gallery changes, the pending jobs nearest to it run next.
+     */
+    public void setCenter(float center){
+        this.center = center;
+    }
+
+    public float getCenter(){
+        return center;
+    }
+
+    public int getMaxRunning(){
+        return maxRunning;
+    }
+
+    /**
+     * Queue the job, it runs as soon as a worker is free and no job nearer to the center waits.
+     */
+    public void add(Job job){
+        if(job == null){
+            throw new NullPointerException();
+        }
+
+        synchronized (this){
+            pending.add(job);
+            if(running >= maxRunning){
+                return;
+            }
+            running++;
+        }
+
+        startWorker();
+    }
+
+    private void startWorker(){
+        boolean started = false;
+        try{
+            Executor target = getTarget();
+            try{
+                target.execute(worker);
+            }catch(RejectedExecutionException e){
+                // the executor of the host app is gone, the own pool takes over
+                synchronized (this){
+                    if(executor == target){
+                        executor = null;
+                    }
+                }
+                getTarget().execute(worker);
+            }
+            started = true;
+        }finally{
+            if(!started){
+                synchronized (this){
+                    running--;
+                }
+            }
+        }
+    }
+
+    private synchronized Executor getTarget(){
+        if(executor != null){
+            return executor;
+        }
+        if(defaultExecutor == null){
+            // idle threads end after a minute, a gallery that is gone leaves none behind
+            defaultExecutor = Executors.newCachedThreadPool();
+        }
+        return defaultExecutor;
+    }
+
+    private void workerFailed(){
+        synchronized (this){
+            running--;
+            if(pending.isEmpty()){
+                return;
+            }
+            running++;
+        }
+        startWorker();
+    }
+
+    private synchronized Job next(){
+        if(pending.isEmpty()){
+            running--;
+            return null;
+        }
+
+        float c = center;
+        int best = 0;
+        float bestDistance = Float.MAX_VALUE;
+
+        for(int i = 0; i < pending.size(); i++){
+            float distance = distance(pending.get(i), c);
+            if(distance < bestDistance){
+                best = i;
+                bestDistance = distance;
+            }
+        }
+
+        return pending.remove(best);
+    }
+
+    private static float distance(Job job, float center){
+        int position = job.getPosition();
+        return position != Job.NO_POSITION ? Math.abs(position - center) : -1;
+    }
+
+    /**
+     * Take a job out before it runs.
+     *
+     * @return false if it runs already, ran or was never queued
+     */
+    public synchronized boolean remove(Job job){
+        return pending.remove(job);
+    }
+
+    /**
+     * The jobs waiting for a worker.
+     */
+    public synchronized int getPendingCount(){
+        return pending.size();
+    }
+
+    public synchronized int getRunningCount(){
+        return running;
+    }
+}
@@ -0,0 +1,58 @@
+package com.masterofcode.android.coverflow_library.utils;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Pixel counts of the cover decodes, to see what the subsampling saves.
+ *
+ * The source pixels are the full size of the images, the decoded ones what the subsampled decode
+ * really produced and the output ones the covers handed to the textures. Decoded pixels close to
+ * the output pixels mean hardly any work was wasted. Updated on the loader threads, read from any thread.
+ *
+ * @author skynet67
+ */
+public class DecodeStats {
+
+    private final AtomicLong decodes = new AtomicLong();
+    private final AtomicLong sourcePixels = new AtomicLong();
+    private final AtomicLong decodedPixels = new AtomicLong();
+    private final AtomicLong outputPixels = new AtomicLong();
+
+    public void add(long source, long decoded, long output){
+        decodes.incrementAndGet();
+        sourcePixels.addAndGet(source);
+        decodedPixels.addAndGet(decoded);
+        outputPixels.addAndGet(output);
+    }
+
+    public long getDecodes(){
+        return decodes.get();
+    }
+
+    public long getSourcePixels(){
+        return sourcePixels.get();
+    }
+
+    public long getDecodedPixels(){
+        return decodedPixels.get();
+    }
+
+    public long getOutputPixels(){
+        return outputPixels.get();
+    }
+
+    /**
+     * Decoded pixels per output pixel, 0 before the first decode.
+     */
+    public float getDecodeRatio(){
+        long output = outputPixels.get();
+        return output > 0 ? (float) decodedPixels.get() / output : 0;
+    }
+
+    public void reset(){
+        decodes.set(0);
+        sourcePixels.set(0);
+        decodedPixels.set(0);
+        outputPixels.set(0);
+    }
+}
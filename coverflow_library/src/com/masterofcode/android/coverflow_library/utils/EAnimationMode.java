@@ -0,0 +1,6 @@
+package com.masterofcode.android.coverflow_library.utils;
+
+public enum EAnimationMode {
+    UI_THREAD,      // fling steps posted to the main thread, every step requests a render
+    RENDER_THREAD   // fling evaluated on the GL thread against the frame time, paced by vsync
+}
@@ -0,0 +1,8 @@
+package com.masterofcode.android.coverflow_library.utils;
+
+public enum EFormatPolicy {
+    BLACK_BARS, // RGB_565 with black bars, ARGB_8888 without, whatever the image is
+    AUTO,       // RGB_565 for opaque, luminance for grayscale, ARGB_8888 when alpha is needed
+    SMALLEST,   // like AUTO, but ARGB_4444 when alpha is needed
+    QUALITY     // always ARGB_8888
+}
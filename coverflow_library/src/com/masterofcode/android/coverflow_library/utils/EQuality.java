@@ -3,7 +3,8 @@ package com.masterofcode.android.coverflow_library.utils;
 public enum EQuality {
     BAD(256),
     GOOD(512),
-    BEST(1024);
+    BEST(1024),
+    AUTO(0); // chosen for the device, see TextureQuality
 
     private int _value;
 
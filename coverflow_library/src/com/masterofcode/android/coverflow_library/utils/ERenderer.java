@@ -0,0 +1,7 @@
+package com.masterofcode.android.coverflow_library.utils;
+
+public enum ERenderer {
+    AUTO,       // OpenGL ES 2.0 when the device supports it, otherwise 1.0
+    GLES10,
+    GLES20
+}
@@ -0,0 +1,141 @@
+package com.masterofcode.android.coverflow_library.utils;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.opengl.ETC1Util;
+import com.androidquery.util.AQUtility;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * ETC1 compressed covers in the cache directory, one .pkm file per url and size.
+ *
+ * ETC1 has no alpha channel, so only opaque RGB_565 covers (the ones with black bars)
+ * are compressed, the others keep going the uncompressed way.
+ *
+ * @author skynet67
+ */
+public class Etc1Cache {
+
+    private static final String DIR = "etc1";
+
+    private final File dir;
+
+    public Etc1Cache(Context context){
+        this(new File(AQUtility.getCacheDir(context), DIR));
+    }
+
+    public Etc1Cache(File dir){
+        this.dir = dir;
+        dir.mkdirs();
+    }
+
+    /**
+     * The compressed cover, null if there is none yet.
+     */
+    public ETC1Util.ETC1Texture get(String url, int size){
+        File file = getFile(url, size);
+        if(file == null || !file.exists()){
+            return null;
+        }
+
+        InputStream in = null;
+        try {
+            in = new BufferedInputStream(new FileInputStream(file));
+            return ETC1Util.createTexture(in);
+        } catch (IOException e) {
+            // broken file, it will be written again
+            AQUtility.debug(e);
+            file.delete();
+        } finally {
+            AQUtility.close(in);
+        }
+
+        return null;
+    }
+
+    public boolean contains(String url, int size){
+        File file = getFile(url, size);
+        return file != null && file.exists();
+    }
+
+    /**
+     * Compress the cover and store it, unless it is already there or can't be compressed.
+     * Slow, call it on a background thread.
+     *
+     * @return true if the cover is in the cache afterwards
+     */
+    public boolean put(String url, int size, Bitmap bitmap){
+        if(contains(url, size)){
+            return true;
+        }
+
+        ETC1Util.ETC1Texture texture = compress(bitmap);
+        if(texture == null){
+            return false;
+        }
+
+        File file = getFile(url, size);
+        if(file == null){
+            return false;
+        }
+
+        // write next to it and rename, readers never see half a file
+        File temp = new File(file.getPath() + ".tmp");
+        OutputStream out = null;
+        try {
+            out = new BufferedOutputStream(new FileOutputStream(temp));
+            ETC1Util.writeTexture(texture, out);
+            out.close();
+            out = null;
+
+            return temp.renameTo(file);
+        } catch (IOException e) {
+            AQUtility.debug(e);
+            temp.delete();
+        } finally {
+            AQUtility.close(out);
+        }
+
+        return false;
+    }
+
+    /**
+     * Only opaque 565 bitmaps with sizes divisible by 4 can be compressed.
+     */
+    public static boolean canCompress(Bitmap bitmap){
+        return bitmap != null && !bitmap.isRecycled()
+                && bitmap.getConfig() == Bitmap.Config.RGB_565
+                && bitmap.getWidth() % 4 == 0 && bitmap.getHeight() % 4 == 0;
+    }
+
+    private static ETC1Util.ETC1Texture compress(Bitmap bitmap){
+        if(!canCompress(bitmap)){
+            return null;
+        }
+
+        int stride = bitmap.getRowBytes();
+        ByteBuffer pixels = ByteBuffer.allocateDirect(stride * bitmap.getHeight());
+        pixels.order(ByteOrder.nativeOrder());
+        bitmap.copyPixelsToBuffer(pixels);
+        pixels.position(0);
+
+        return ETC1Util.compressTexture(pixels, bitmap.getWidth(), bitmap.getHeight(), 2, stride);
+    }
+
+    private File getFile(String url, int size){
+        if(url == null){
+            return null;
+        }
+        return AQUtility.getCacheFile(dir, url + "#" + size + ".pkm");
+    }
+}
@@ -0,0 +1,91 @@
+package com.masterofcode.android.coverflow_library.utils;
+
+/**
+ * What one frame of the gallery cost. The object is reused for every frame,
+ * copy the values to keep them.
+ *
+ * @author skynet67
+ */
+public class FrameMetrics {
+
+    private long frameStartNanos;
+    private long drawNanos;
+    private long intervalNanos;
+    private int uploads;
+    private int uploadBytes;
+    private int drawCalls;
+    private int tilesDrawn;
+    private int placeholderTiles;
+    private long inputLatencyMillis = -1;
+
+    /**
+     * {@link System#nanoTime()} when onDrawFrame started.
+     */
+    public long getFrameStartNanos() {
+        return frameStartNanos;
+    }
+
+    /**
+     * CPU time spent in onDrawFrame, the buffer swap not included.
+     */
+    public long getDrawNanos() {
+        return drawNanos;
+    }
+
+    /**
+     * Time since the start of the previous frame, 0 for the first frame and for a frame
+     * after an idle period, when nothing asked for it to come in time.
+     */
+    public long getIntervalNanos() {
+        return intervalNanos;
+    }
+
+    /**
+     * Textures uploaded by the upload queue in this frame.
+     */
+    public int getUploads() {
+        return uploads;
+    }
+
+    public int getUploadBytes() {
+        return uploadBytes;
+    }
+
+    public int getDrawCalls() {
+        return drawCalls;
+    }
+
+    public int getTilesDrawn() {
+        return tilesDrawn;
+    }
+
+    /**
+     * Tiles drawn with the empty image because their cover wasn't there yet.
+     */
+    public int getPlaceholderTiles() {
+        return placeholderTiles;
+    }
+
+    /**
+     * From the first touch event since the previous frame to the end of this frame, -1 without input.
+     */
+    public long getInputLatencyMillis() {
+        return inputLatencyMillis;
+    }
+
+    /**
+     * Fill the values of a frame, called by the view on the GL thread.
+     */
+    public void set(long frameStartNanos, long drawNanos, long intervalNanos, int uploads, int uploadBytes,
+                    int drawCalls, int tilesDrawn, int placeholderTiles, long inputLatencyMillis){
+        this.frameStartNanos = frameStartNanos;
+        this.drawNanos = drawNanos;
+        this.intervalNanos = intervalNanos;
+        this.uploads = uploads;
+        this.uploadBytes = uploadBytes;
+        this.drawCalls = drawCalls;
+        this.tilesDrawn = tilesDrawn;
+        this.placeholderTiles = placeholderTiles;
+        this.inputLatencyMillis = inputLatencyMillis;
+    }
+}
@@ -0,0 +1,158 @@
+package com.masterofcode.android.coverflow_library.utils;
+
+import java.util.Arrays;
+
+/**
+ * Rolling summaries of the last frames: percentiles of the draw time, the frame interval
+ * and the input latency, and the number of janky frames.
+ *
+ * Frames are added on the GL thread, the summaries can be read from any thread.
+ *
+ * @author skynet67
+ */
+public class FrameStats {
+
+    public static final int DEFAULT_WINDOW = 120;
+
+    /**
+     * An interval longer than one and a half 60 Hz frames means at least one frame was dropped.
+     */
+    public static final long JANK_NANOS = 25000000L;
+
+    private final long[] draw;
+    private final long[] interval;
+    private final long[] latency;
+    private final long[] scratch;
+
+    private int frames;      // in the window
+    private int next;
+    private int latencies;   // in the window
+    private int nextLatency;
+
+    private long totalFrames;
+    private long totalJanky;
+
+    public FrameStats(){
+        this(DEFAULT_WINDOW);
+    }
+
+    /**
+     * @param window the number of frames the summaries look back
+     */
+    public FrameStats(int window){
+        draw = new long[window];
+        interval = new long[window];
+        latency = new long[window];
+        scratch = new long[window];
+    }
+
+    public synchronized void add(FrameMetrics metrics){
+        draw[next] = metrics.getDrawNanos();
+        interval[next] = metrics.getIntervalNanos();
+        next = (next + 1) % draw.length;
+        frames = Math.min(frames + 1, draw.length);
+
+        if(metrics.getInputLatencyMillis() >= 0){
+            latency[nextLatency] = metrics.getInputLatencyMillis() * 1000000L;
+            nextLatency = (nextLatency + 1) % latency.length;
+            latencies = Math.min(latencies + 1, latency.length);
+        }
+
+        totalFrames++;
+        if(metrics.getIntervalNanos() > JANK_NANOS){
+            totalJanky++;
+        }
+    }
+
+    /**
+     * @param percentile 0 to 100
+     * @return the draw time in nanos, 0 without frames
+     */
+    public synchronized long getDrawPercentile(float percentile){
+        return percentile(draw, frames, percentile, false);
+    }
+
+    /**
+     * @param percentile 0 to 100
+     * @return the time between frames in nanos, 0 without frames. Frames after an idle period don't count.
+     */
+    public synchronized long getIntervalPercentile(float percentile){
+        return percentile(interval, frames, percentile, true);
+    }
+
+    /**
+     * @param percentile 0 to 100
+     * @return the input latency in nanos, 0 without input
+     */
+    public synchronized long getInputLatencyPercentile(float percentile){
+        return percentile(latency, latencies, percentile, false);
+    }
+
+    /**
+     * Janky frames in the window.
+     */
+    public synchronized int getJankyFrames(){
+        int janky = 0;
+        for(int i = 0; i < frames; i++){
+            if(interval[i] > JANK_NANOS){
+                janky++;
+            }
+        }
+        return janky;
+    }
+
+    /**
+     * The frame intervals of the window, oldest first.
+     *
+     * @param out receives up to out.length of the newest intervals
+     * @return the number of intervals written
+     */
+    public synchronized int getIntervals(long[] out){
+        int count = Math.min(frames, out.length);
+        for(int i = 0; i < count; i++){
+            int index = (next - count + i + draw.length) % draw.length;
+            out[i] = interval[index];
+        }
+        return count;
+    }
+
+    public synchronized int getFrameCount(){
+        return frames;
+    }
+
+    public synchronized long getTotalFrames(){
+        return totalFrames;
+    }
+
+    public synchronized long getTotalJankyFrames(){
+        return totalJanky;
+    }
+
+    public synchronized void reset(){
+        frames = 0;
+        next = 0;
+        latencies = 0;
+        nextLatency = 0;
+        totalFrames = 0;
+        totalJanky = 0;
+    }
+
+    private long percentile(long[] values, int count, float percentile, boolean skipZero){
+        int n = 0;
+        for(int i = 0; i < count; i++){
+            if(!skipZero || values[i] != 0){
+                scratch[n++] = values[i];
+            }
+        }
+        count = n;
+
+        if(count == 0){
+            return 0;
+        }
+
+        Arrays.sort(scratch, 0, count);
+
+        int index = Math.round(percentile / 100f * (count - 1));
+        return scratch[Math.max(0, Math.min(count - 1, index))];
+    }
+}
@@ -0,0 +1,94 @@
+package com.masterofcode.android.coverflow_library.utils;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counts of the cover loads, to see how much fetch, decode and upload work was done for nothing.
+ *
+ * A load cancelled before it ran cost nothing. One cancelled while it ran, or finished after
+ * it was cancelled, wasted its download and decode. A used load reached its cover, if its bitmap
+ * was dropped from the upload queue afterwards the decode was wasted too. Updated on the loader,
+ * the UI and the GL thread, read from any thread.
+ *
+ * @author skynet67
+ */
+public class LoadStats {
+
+    private final AtomicLong requested = new AtomicLong();
+    private final AtomicLong used = new AtomicLong();
+    private final AtomicLong cancelled = new AtomicLong();
+    private final AtomicLong wasted = new AtomicLong();
+    private final AtomicLong droppedUploads = new AtomicLong();
+
+    public void addRequested(){
+        requested.incrementAndGet();
+    }
+
+    public void addUsed(){
+        used.incrementAndGet();
+    }
+
+    public void addCancelled(){
+        cancelled.incrementAndGet();
+    }
+
+    public void addWasted(){
+        wasted.incrementAndGet();
+    }
+
+    public void addDroppedUpload(){
+        droppedUploads.incrementAndGet();
+    }
+
+    /**
+     * The loads that had to fetch or decode, memory cache hits are not counted.
+     */
+    public long getRequested(){
+        return requested.get();
+    }
+
+    /**
+     * The requested loads whose bitmap reached the cover, never more than {@link #getRequested()}.
+     */
+    public long getUsed(){
+        return used.get();
+    }
+
+    /**
+     * The loads cancelled before they ran.
+     */
+    public long getCancelled(){
+        return cancelled.get();
+    }
+
+    /**
+     * The loads cancelled while they ran or after they finished.
+     */
+    public long getWasted(){
+        return wasted.get();
+    }
+
+    /**
+     * The used loads whose bitmap was dropped before its upload.
+     */
+    public long getDroppedUploads(){
+        return droppedUploads.get();
+    }
+
+    /**
+     * The share of the finished or started work that was thrown away, 0 before the first load.
+     */
+    public float getWastedRatio(){
+        long thrown = wasted.get() + droppedUploads.get();
+        long total = wasted.get() + used.get();
+        return total > 0 ? (float) thrown / total : 0;
+    }
+
+    public void reset(){
+        requested.set(0);
+        used.set(0);
+        cancelled.set(0);
+        wasted.set(0);
+        droppedUploads.set(0);
+    }
+}
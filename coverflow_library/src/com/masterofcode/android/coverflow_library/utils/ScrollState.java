@@ -0,0 +1,116 @@
+package com.masterofcode.android.coverflow_library.utils;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Scroll position shared between the UI thread and the GL thread.
+ *
+ * A sequence lock: the version is odd while a writer is busy, readers copy the
+ * values and retry if the version changed meanwhile, so they always get values
+ * that were published together. Reading takes no lock and allocates nothing.
+ *
+ * @author skynet67
+ */
+public class ScrollState {
+
+    private final AtomicInteger version = new AtomicInteger();
+
+    private volatile float offset;
+    private volatile float velocity;
+    private volatile long timeNanos;
+
+    /**
+     * A consistent copy of the state, reused by the reader.
+     */
+    public static class Snapshot {
+        private float offset;
+        private float velocity;
+        private long timeNanos;
+        private int version;
+
+        /**
+         * The position in tiles, 0 is the first tile in the center.
+         */
+        public float getOffset() {
+            return offset;
+        }
+
+        /**
+         * Tiles per second.
+         */
+        public float getVelocity() {
+            return velocity;
+        }
+
+        /**
+         * {@link System#nanoTime()} of the publish.
+         */
+        public long getTimeNanos() {
+            return timeNanos;
+        }
+
+        public int getVersion() {
+            return version;
+        }
+    }
+
+    public void publish(float offset, float velocity, long timeNanos){
+        int v;
+        do {
+            v = version.get();
+        } while ((v & 1) != 0 || !version.compareAndSet(v, v + 1));
+
+        write(offset, velocity, timeNanos);
+        version.set(v + 2);
+    }
+
+    /**
+     * Publish only if nothing was published since the snapshot with the given version was read.
+     *
+     * @return false if someone else published first
+     */
+    public boolean publish(int expectedVersion, float offset, float velocity, long timeNanos){
+        if((expectedVersion & 1) != 0 || !version.compareAndSet(expectedVersion, expectedVersion + 1)){
+            return false;
+        }
+
+        write(offset, velocity, timeNanos);
+        version.set(expectedVersion + 2);
+        return true;
+    }
+
+    public void read(Snapshot out){
+        while (true){
+            int v = version.get();
+            if((v & 1) != 0){
+                // a writer is in the middle of it, it only takes a few stores
+                continue;
+            }
+
+            float o = offset;
+            float vel = velocity;
+            long t = timeNanos;
+
+            if(version.get() == v){
+                out.offset = o;
+                out.velocity = vel;
+                out.timeNanos = t;
+                out.version = v;
+                return;
+            }
+        }
+    }
+
+    /**
+     * The last published offset, a single value is always consistent.
+     */
+    public float getOffset(){
+        return offset;
+    }
+
+    private void write(float offset, float velocity, long timeNanos){
+        this.offset = offset;
+        this.velocity = velocity;
+        this.timeNanos = timeNanos;
+    }
+}
@@ -0,0 +1,275 @@
+package com.masterofcode.android.coverflow_library.utils;
+
+import android.graphics.Bitmap;
+import android.opengl.GLUtils;
+
+import javax.microedition.khronos.opengles.GL10;
+import java.nio.ByteBuffer;
+
+/**
+ * Picks the pixel format of a cover texture from what the image really contains.
+ *
+ * A luminance texture is kept in an ALPHA_8 bitmap that holds the gray values,
+ * {@link #texImage2D(Bitmap)} uploads it as GL_LUMINANCE.
+ *
+ * @author skynet67
+ */
+public class TextureFormats {
+
+    private static final int GRAY_TOLERANCE = 2; // per channel, jpeg noise
+
+    /**
+     * What the image contains, found by looking at every pixel. A sparse grid could miss a small
+     * colored logo or a transparent corner, and the texture would lose it.
+     */
+    public static class Content {
+        public boolean alpha;
+        public boolean gray;
+    }
+
+    public static Content analyze(Bitmap bitmap){
+        Content content = new Content();
+
+        int w = bitmap.getWidth();
+        int h = bitmap.getHeight();
+
+        boolean checkAlpha = bitmap.hasAlpha();
+        content.gray = true;
+
+        int[] row = new int[w];
+        for(int y = 0; y < h; y++){
+            bitmap.getPixels(row, 0, w, 0, y, w, 1);
+
+            for(int x = 0; x < w; x++){
+                int c = row[x];
+
+                if(checkAlpha && (c >>> 24) != 0xff){
+                    content.alpha = true;
+                }
+
+                int r = (c >> 16) & 0xff;
+                int g = (c >> 8) & 0xff;
+                int b = c & 0xff;
+                if(Math.abs(r - g) > GRAY_TOLERANCE || Math.abs(g - b) > GRAY_TOLERANCE){
+                    content.gray = false;
+                }
+            }
+
+            if(!content.gray && (content.alpha || !checkAlpha)){
+                // nothing left to find out
+                break;
+            }
+        }
+
+        return content;
+    }
+
+    /**
+     * @param showBlackBars the image is drawn on black, its own alpha doesn't matter then
+     * @param transparentMargins parts of the texture stay transparent, e.g. no black bars or round corners
+     * @return the config of the texture bitmap, ALPHA_8 for luminance
+     */
+    public static Bitmap.Config select(EFormatPolicy policy, Content content, boolean showBlackBars, boolean transparentMargins){
+        switch (policy){
+            case QUALITY:
+                return Bitmap.Config.ARGB_8888;
+            case AUTO:
+            case SMALLEST:
+                if((content.alpha && !showBlackBars) || transparentMargins){
+                    return policy == EFormatPolicy.SMALLEST ? Bitmap.Config.ARGB_4444 : Bitmap.Config.ARGB_8888;
+                }
+                return content.gray ? Bitmap.Config.ALPHA_8 : Bitmap.Config.RGB_565;
+            default:
+                return showBlackBars ? Bitmap.Config.RGB_565 : Bitmap.Config.ARGB_8888;
+        }
+    }
+
+    /**
+     * The gray values of an opaque bitmap in an ALPHA_8 bitmap. The source is recycled.
+     */
+    public static Bitmap toLuminance(Bitmap bitmap){
+        return toLuminance(bitmap, null);
+    }
+
+    /**
+     * The gray values of an opaque bitmap in an ALPHA_8 bitmap taken from the pool,
+     * the source is given back to the pool. Without a pool the source is recycled.
+     */
+    public static Bitmap toLuminance(Bitmap bitmap, BitmapPool pool){
+        int w = bitmap.getWidth();
+        int h = bitmap.getHeight();
+
+        Bitmap result = pool != null ? pool.acquire(w, h, Bitmap.Config.ALPHA_8) : null;
+        if(result == null){
+            result = Bitmap.createBitmap(w, h, Bitmap.Config.ALPHA_8);
+        }
+        int stride = result.getRowBytes();
+
+        ByteBuffer pixels = ByteBuffer.allocate(stride * h);
+        int[] row = new int[w];
+
+        for(int y = 0; y < h; y++){
+            bitmap.getPixels(row, 0, w, 0, y, w, 1);
+            pixels.position(y * stride);
+
+            for(int x = 0; x < w; x++){
+                int c = row[x];
+                // Rec. 601 luma
+                int l = (((c >> 16) & 0xff) * 77 + ((c >> 8) & 0xff) * 150 + (c & 0xff) * 29) >> 8;
+                pixels.put((byte) l);
+            }
+        }
+
+        pixels.position(0);
+        result.copyPixelsFromBuffer(pixels);
+        if(pool != null){
+            pool.release(bitmap);
+        } else {
+            bitmap.recycle();
+        }
+
+        return result;
+    }
+
+    public static boolean isLuminance(Bitmap bitmap){
+        return bitmap.getConfig() == Bitmap.Config.ALPHA_8;
+    }
+
+    /**
+     * The bytes a texel of the bitmap takes on the GPU, luminance is one byte.
+     */
+    public static int getBytesPerPixel(Bitmap bitmap){
+        Bitmap.Config config = bitmap.getConfig();
+        if(config == Bitmap.Config.ALPHA_8){
+            return 1;
+        }
+        if(config == Bitmap.Config.RGB_565 || config == Bitmap.Config.ARGB_4444){
+            return 2;
+        }
+        return 4;
+    }
+
+    /**
+     * True if the texture of the bitmap has no transparent pixels, luminance included.
+     */
+    public static boolean isOpaque(Bitmap bitmap){
+        return isLuminance(bitmap) || bitmap.getConfig() == Bitmap.Config.RGB_565 || !bitmap.hasAlpha();
+    }
+
+    /**
+     * Upload the bitmap into the bound texture, luminance bitmaps as GL_LUMINANCE.
+     */
+    public static void texImage2D(Bitmap bitmap){
+        if(isLuminance(bitmap)){
+            GLUtils.texImage2D(GL10.GL_TEXTURE_2D, 0, GL10.GL_LUMINANCE, bitmap, 0);
+        } else {
+            GLUtils.texImage2D(GL10.GL_TEXTURE_2D, 0, bitmap, 0);
+        }
+    }
+
+    /**
+     * Upload the bitmap into the top left corner of a bound texture of the given size,
+     * for GPUs that can't do non power of two textures. The rest of the texture is undefined.
+     */
+    public static void texImage2D(GL10 gl, Bitmap bitmap, int textureWidth, int textureHeight){
+        if(bitmap.getWidth() == textureWidth && bitmap.getHeight() == textureHeight){
+            texImage2D(bitmap);
+            return;
+        }
+
+        int format = getFormat(bitmap);
+        int type = getType(bitmap);
+
+        // allocate only, the pixels come with the sub image
+        gl.glTexImage2D(GL10.GL_TEXTURE_2D, 0, format, textureWidth, textureHeight, 0, format, type, null);
+        GLUtils.texSubImage2D(GL10.GL_TEXTURE_2D, 0, 0, 0, bitmap, format, type);
+    }
+
+    /**
+     * True if a texture of the bitmap can get mipmaps: a power of two that isn't padded,
+     * the padding would bleed into the smaller levels.
+     */
+    public static boolean canMipmap(Bitmap bitmap, int textureWidth, int textureHeight){
+        return bitmap.getWidth() == textureWidth && bitmap.getHeight() == textureHeight
+                && isPowerOfTwo(textureWidth) && isPowerOfTwo(textureHeight);
+    }
+
+    /**
+     * Upload the bitmap and all of its mipmap levels into the bound texture, see {@link #canMipmap}.
+     * The levels are filtered down on the CPU, that works the same on GLES 1.x and 2.0
+     * and on the upload thread.
+     */
+    public static void texImage2DMipmapped(Bitmap bitmap){
+        texImage2D(bitmap);
+        uploadLevels(bitmap, false);
+    }
+
+    /**
+     * Write the bitmap into the storage of the bound texture, which was created for a bitmap of the same
+     * size and format by {@link #texImage2D(GL10, Bitmap, int, int)} or {@link #texImage2DMipmapped(Bitmap)}.
+     * A padded texture keeps whatever its padding held.
+     */
+    public static void texSubImage2D(Bitmap bitmap, boolean mipmapped){
+        GLUtils.texSubImage2D(GL10.GL_TEXTURE_2D, 0, 0, 0, bitmap, getFormat(bitmap), getType(bitmap));
+        if(mipmapped){
+            uploadLevels(bitmap, true);
+        }
+    }
+
+    private static void uploadLevels(Bitmap bitmap, boolean sub){
+        Bitmap level = bitmap;
+        int width = bitmap.getWidth();
+        int height = bitmap.getHeight();
+        int format = getFormat(bitmap);
+        int type = getType(bitmap);
+
+        for(int i = 1; width > 1 || height > 1; i++){
+            width = Math.max(1, width / 2);
+            height = Math.max(1, height / 2);
+
+            Bitmap next = Bitmap.createScaledBitmap(level, width, height, true);
+            if(level != bitmap){
+                level.recycle();
+            }
+            level = next;
+
+            if(sub){
+                GLUtils.texSubImage2D(GL10.GL_TEXTURE_2D, i, 0, 0, level, format, type);
+            } else if(isLuminance(level)){
+                GLUtils.texImage2D(GL10.GL_TEXTURE_2D, i, GL10.GL_LUMINANCE, level, 0);
+            } else {
+                GLUtils.texImage2D(GL10.GL_TEXTURE_2D, i, level, 0);
+            }
+        }
+
+        if(level != bitmap){
+            level.recycle();
+        }
+    }
+
+    /**
+     * The GL format of the texture of the bitmap, GL_LUMINANCE for luminance bitmaps.
+     */
+    public static int getFormat(Bitmap bitmap){
+        return isLuminance(bitmap) ? GL10.GL_LUMINANCE : GLUtils.getInternalFormat(bitmap);
+    }
+
+    /**
+     * The GL type of the texture of the bitmap.
+     */
+    public static int getType(Bitmap bitmap){
+        return isLuminance(bitmap) ? GL10.GL_UNSIGNED_BYTE : GLUtils.getType(bitmap);
+    }
+
+    public static boolean isPowerOfTwo(int value){
+        return value > 0 && (value & (value - 1)) == 0;
+    }
+
+    public static int nextPowerOfTwo(int value){
+        int result = 1;
+        while(result < value){
+            result <<= 1;
+        }
+        return result;
+    }
+}
@@ -0,0 +1,82 @@
+package com.masterofcode.android.coverflow_library.utils;
+
+import com.masterofcode.android.coverflow_library.render_objects.AbstractImage;
+
+/**
+ * Picks the cover texture size and the number of cached tiles for {@link EQuality#AUTO}.
+ *
+ * The size follows the pixels the center tile covers on the screen. A texture a bit smaller
+ * than the tile is magnified on the screen, that is hard to see on dense displays, so they get
+ * away with a smaller texture. The tile budget is a share of the memory class,
+ * counted as ARGB_8888 since every cached tile holds a decoded bitmap and a texture of that size.
+ *
+ * @author skynet67
+ */
+public class TextureQuality {
+
+    public static final int MIN_SIZE = 128;
+    public static final int MAX_SIZE = 2048;
+
+    private static final int MAX_TILES = 41;
+    private static final int BYTES_PER_PIXEL = 4;
+    private static final int MEMORY_SHARE = 4;   // a quarter of the memory class for the tiles
+
+    private static final float MAGNIFICATION = 1.2f;        // not noticed on any display
+    private static final float DENSE_MAGNIFICATION = 1.5f;  // not noticed from xhdpi on
+
+    /**
+     * A power of two, so the texture can go into the atlas and into ETC1 on any GPU.
+     *
+     * @param maxTextureSize GL_MAX_TEXTURE_SIZE, 0 if unknown
+     * @param memoryClass the memory class of the device in megabytes
+     * @param density the logical density of the display, 1 for mdpi
+     * @param visibleTiles the visible tiles left and right
+     */
+    public static int chooseImageSize(int viewportWidth, int viewportHeight, int maxTextureSize,
+                                      int memoryClass, float density, int visibleTiles){
+        float desired = AbstractImage.getDesiredSize(viewportWidth, viewportHeight, MIN_SIZE);
+        float magnification = density >= 2.0f ? DENSE_MAGNIFICATION : MAGNIFICATION;
+
+        int limit = MAX_SIZE;
+        if(maxTextureSize > 0){
+            limit = Math.min(limit, Integer.highestOneBit(maxTextureSize));
+        }
+
+        int size = MIN_SIZE;
+        while(size * magnification < desired && size * 2 <= limit){
+            size <<= 1;
+        }
+
+        // the tiles on the screen have to fit into the budget
+        while(size > MIN_SIZE && chooseMaxTiles(size, memoryClass, 0) < minTiles(visibleTiles)){
+            size >>= 1;
+        }
+
+        return size;
+    }
+
+    /**
+     * The number of tiles that fit into the memory share, never less than the tiles on the screen.
+     */
+    public static int chooseMaxTiles(int imageSize, int memoryClass, int visibleTiles){
+        long budget = chooseTextureBudget(memoryClass);
+        long tileBytes = (long) imageSize * imageSize * BYTES_PER_PIXEL;
+
+        int tiles = (int) Math.min(MAX_TILES, budget / tileBytes);
+        return Math.max(tiles, minTiles(visibleTiles));
+    }
+
+    /**
+     * The bytes the cover textures may take, the same share of the memory class as the tiles.
+     */
+    public static long chooseTextureBudget(int memoryClass){
+        return (long) memoryClass * 1024 * 1024 / MEMORY_SHARE;
+    }
+
+    /**
+     * The tiles on the screen and one more on each side that slides in while scrolling.
+     */
+    private static int minTiles(int visibleTiles){
+        return visibleTiles * 2 + 3;
+    }
+}
@@ -0,0 +1,60 @@
+package com.masterofcode.android.coverflow_library.utils;
+
+import android.os.Build;
+
+import java.lang.reflect.Method;
+
+/**
+ * android.os.Trace sections for systrace, on API 18 and newer. The library builds against
+ * an older SDK, so the class is looked up once by reflection. Does nothing on older devices.
+ *
+ * Sections nest and must be ended on the thread that began them.
+ *
+ * @author skynet67
+ */
+public class TraceCompat {
+
+    private static final int JELLY_BEAN_MR2 = 18;
+
+    private static final Method BEGIN_SECTION;
+    private static final Method END_SECTION;
+
+    static {
+        Method begin = null;
+        Method end = null;
+
+        if(Build.VERSION.SDK_INT >= JELLY_BEAN_MR2){
+            try {
+                Class<?> trace = Class.forName("android.os.Trace");
+                begin = trace.getMethod("beginSection", String.class);
+                end = trace.getMethod("endSection");
+            } catch (Exception e) {
+                begin = null;
+                end = null;
+            }
+        }
+
+        BEGIN_SECTION = begin;
+        END_SECTION = end;
+    }
+
+    public static void beginSection(String name){
+        if(BEGIN_SECTION != null){
+            try {
+                BEGIN_SECTION.invoke(null, name);
+            } catch (Exception e) {
+                // tracing is best effort
+            }
+        }
+    }
+
+    public static void endSection(){
+        if(END_SECTION != null){
+            try {
+                END_SECTION.invoke(null);
+            } catch (Exception e) {
+                // tracing is best effort
+            }
+        }
+    }
+}